@@ -0,0 +1,164 @@
+package com.healthbuddy;
+
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 非同步資料存取類別
+ * 在背景執行緒借用連線執行資料庫工作，再把結果送回 Event Dispatch Thread；
+ * 同一個 key 的新請求會取代尚未完成的舊請求，舊結果會被丟棄；
+ * 匯入與匯出等長時間佔用連線的批次工作另走單一執行緒的批次通道
+ */
+public final class AsyncDataAccess {
+    // Each worker holds one pooled connection while it runs, and the bulk lane holds one for a whole
+    // import or export; WORKER_THREADS + 1 <= POOL_SIZE keeps a connection free for each, so neither
+    // side waits out BORROW_TIMEOUT_MS. With a single-connection pool both share it and take turns.
+    private static final int WORKER_THREADS = Math.max(1, Math.min(ConnectionPool.POOL_SIZE - 1,
+            Integer.getInteger("healthbuddy.async.threads", ConnectionPool.POOL_SIZE - 1)));
+    private static final int QUEUE_CAPACITY = 64;
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+    private static final AtomicInteger bulkThreadCounter = new AtomicInteger();
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+            WORKER_THREADS, WORKER_THREADS, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+            runnable -> {
+                Thread thread = new Thread(runnable, "db-worker-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    // Bulk jobs are started by hand and queue behind each other rather than borrowing a second connection
+    private static final ThreadPoolExecutor BULK_EXECUTOR = new ThreadPoolExecutor(
+            1, 1, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "db-bulk-" + bulkThreadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private static final Map<Object, Request> latestRequests = new ConcurrentHashMap<>();
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+        BULK_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 在已連線的 DatabaseManager 上執行的工作
+     */
+    public interface DbTask<T> {
+        T run(DatabaseManager dbManager) throws Exception;
+    }
+
+    private AsyncDataAccess() {
+    }
+
+    /**
+     * 提交資料庫工作
+     *
+     * @param key       用來辨識可互相取代的請求，例如同一個圖表；null 表示不會被取代
+     * @param task      在背景執行緒執行，連線由這裡借用與歸還
+     * @param onSuccess 在 EDT 上接收結果，可為 null
+     * @param onError   在 EDT 上接收例外，可為 null
+     */
+    public static <T> Future<?> submit(Object key, DbTask<T> task, Consumer<T> onSuccess,
+            Consumer<Exception> onError) {
+        Request request = new Request();
+        if (key != null) {
+            Request previous = latestRequests.put(key, request);
+            if (previous != null) {
+                previous.cancel();
+            }
+        }
+
+        try {
+            request.future = EXECUTOR.submit(() -> {
+                if (request.cancelled) {
+                    return;
+                }
+                T result = null;
+                Exception failure = null;
+                DatabaseManager dbManager = new DatabaseManager();
+                try {
+                    dbManager.connect();
+                    result = task.run(dbManager);
+                } catch (Exception e) {
+                    failure = e;
+                } finally {
+                    dbManager.closeConnection();
+                }
+                deliver(key, request, result, failure, onSuccess, onError);
+            });
+        } catch (RejectedExecutionException e) {
+            deliver(key, request, null, new IllegalStateException("Too many pending database requests"),
+                    onSuccess, onError);
+        }
+        return request.future;
+    }
+
+    /**
+     * 在批次通道上執行會長時間借用一條連線的 SwingWorker，取代 worker.execute()；
+     * 進度與 done() 仍照 SwingWorker 原本的方式回到 EDT
+     */
+    public static void executeBulk(SwingWorker<?, ?> worker) {
+        BULK_EXECUTOR.execute(worker);
+    }
+
+    /**
+     * 取消某個 key 尚未完成的請求
+     */
+    public static void cancel(Object key) {
+        Request previous = latestRequests.remove(key);
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    private static <T> void deliver(Object key, Request request, T result, Exception failure,
+            Consumer<T> onSuccess, Consumer<Exception> onError) {
+        SwingUtilities.invokeLater(() -> {
+            // A newer request for the same key has replaced this one
+            if (request.cancelled) {
+                return;
+            }
+            if (key != null) {
+                latestRequests.remove(key, request);
+            }
+            if (failure != null) {
+                if (onError != null) {
+                    onError.accept(failure);
+                } else {
+                    failure.printStackTrace();
+                }
+            } else if (onSuccess != null) {
+                onSuccess.accept(result);
+            }
+        });
+    }
+
+    private static class Request {
+        private volatile boolean cancelled;
+        private volatile Future<?> future;
+
+        void cancel() {
+            cancelled = true;
+            Future<?> f = future;
+            if (f != null) {
+                // Not interrupting: a running SQLite query finishes and its result is dropped
+                f.cancel(false);
+            }
+        }
+    }
+}
@@ -4,11 +4,15 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.sql.SQLException;
-import java.text.ParseException;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 public class CalendarPopup {
@@ -16,6 +20,7 @@ public class CalendarPopup {
     private JWindow calendarPopup;
     private JPanel calendarPanel;
     private Consumer<String> onDateSelected;
+    private final Map<YearMonth, BitSet> occupancyCache = new ConcurrentHashMap<>();
 
     public CalendarPopup(JTextField parentField, Consumer<String> onDateSelected, User user, String type) {
         this.calendar = Calendar.getInstance();
@@ -96,73 +101,94 @@ public class CalendarPopup {
             calendarPanel.add(new JLabel());
         }
 
-        try {
-            DatabaseManager dbManager = new DatabaseManager();
-            dbManager.connect();
-            for (int day = 1; day <= daysInMonth; day++) {
-                int currentDay = day;
-                JLabel dayLabel = new JLabel(String.valueOf(currentDay), JLabel.CENTER);
-                dayLabel.setOpaque(true);
-                dayLabel.setPreferredSize(new Dimension(parentField.getWidth() / 7, 30));
-
-                // Format the date as MM/DD/YYYY
-                String date = String.format("%1$tm/%2$02d/%1$tY", calendar, currentDay);
-                boolean hasData = false;
-                try {
-                    if (type == "DailyHabit") {
-                        hasData = dbManager.checkDailyHabitExists(user.getUsername(), date);
-                    } else if (type == "HealthData") {
-                        hasData = dbManager.checkHealthDataExists(user.getUsername(), date);
+        YearMonth month = YearMonth.of(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1);
+        // The grid is drawn straight away; days with data are shaded once the month has loaded
+        BitSet occupiedDays = occupancyCache.get(month);
+        boolean isCurrentMonth = calendar.get(Calendar.YEAR) == today.get(Calendar.YEAR) &&
+                calendar.get(Calendar.MONTH) == today.get(Calendar.MONTH);
+        List<JLabel> dayLabels = new ArrayList<>(daysInMonth);
+
+        for (int day = 1; day <= daysInMonth; day++) {
+            int currentDay = day;
+            JLabel dayLabel = new JLabel(String.valueOf(currentDay), JLabel.CENTER);
+            dayLabel.setOpaque(true);
+            dayLabel.setPreferredSize(new Dimension(parentField.getWidth() / 7, 30));
+
+            // Format the date as MM/DD/YYYY
+            String date = String.format("%1$tm/%2$02d/%1$tY", calendar, currentDay);
+            boolean isToday = isCurrentMonth && currentDay == today.get(Calendar.DAY_OF_MONTH);
+            styleDayLabel(dayLabel, isToday, occupiedDays != null && occupiedDays.get(currentDay - 1));
+
+            // Add a click listener to select the date
+            dayLabel.addMouseListener(new MouseAdapter() {
+                @Override
+                public void mouseClicked(MouseEvent e) {
+                    dayLabel.setBackground(new Color(100, 149, 237));
+                    dayLabel.setForeground(Color.WHITE);
+                    parentField.setText(date);
+
+                    if (onDateSelected != null) {
+                        onDateSelected.accept(date);
                     }
-                } catch (ParseException e) {
-                    e.printStackTrace();
-                }
-
-                // Highlight today's date
-                if (calendar.get(Calendar.YEAR) == today.get(Calendar.YEAR) &&
-                        calendar.get(Calendar.MONTH) == today.get(Calendar.MONTH) &&
-                        currentDay == today.get(Calendar.DAY_OF_MONTH)) {
-                    dayLabel.setBorder(BorderFactory.createLineBorder(new Color(0, 128, 0), 2));
-                } else if (hasData) {
-                    dayLabel.setBorder(BorderFactory.createLineBorder(Color.LIGHT_GRAY));
-                    dayLabel.setBackground(Color.LIGHT_GRAY);
-                } else {
-                    dayLabel.setBorder(BorderFactory.createLineBorder(Color.WHITE));
-                    dayLabel.setBackground(Color.WHITE);
-                }
 
-                // Add a click listener to select the date
-                dayLabel.addMouseListener(new MouseAdapter() {
-                    @Override
-                    public void mouseClicked(MouseEvent e) {
-                        dayLabel.setBackground(new Color(100, 149, 237));
-                        dayLabel.setForeground(Color.WHITE);
-                        parentField.setText(date);
-
-                        if (onDateSelected != null) {
-                            onDateSelected.accept(date);
+                    // Close the popup after a short delay
+                    new Timer().schedule(new TimerTask() {
+                        @Override
+                        public void run() {
+                            calendarPopup.dispose();
                         }
+                    }, 500);
+                }
+            });
 
-                        // Close the popup after a short delay
-                        new Timer().schedule(new TimerTask() {
-                            @Override
-                            public void run() {
-                                calendarPopup.dispose();
-                            }
-                        }, 500);
-                    }
-                });
-
-                calendarPanel.add(dayLabel);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            calendarPanel.add(dayLabel);
+            dayLabels.add(dayLabel);
         }
 
         // Add the day cells
 
         calendarPanel.revalidate();
         calendarPanel.repaint();
+
+        if (occupiedDays == null) {
+            int todayIndex = isCurrentMonth ? today.get(Calendar.DAY_OF_MONTH) - 1 : -1;
+            // Keyed on this popup so quickly paging through months only shades the last one shown
+            AsyncDataAccess.submit(this,
+                    db -> db.getMonthOccupancy(user.getUsername(), type, month),
+                    days -> {
+                        occupancyCache.put(month, days);
+                        for (int i = 0; i < dayLabels.size(); i++) {
+                            styleDayLabel(dayLabels.get(i), i == todayIndex, days.get(i));
+                        }
+                    },
+                    Throwable::printStackTrace);
+        }
+        prefetchOccupancy(user, type, month.minusMonths(1));
+        prefetchOccupancy(user, type, month.plusMonths(1));
+    }
+
+    private void styleDayLabel(JLabel dayLabel, boolean isToday, boolean hasData) {
+        // Highlight today's date
+        if (isToday) {
+            dayLabel.setBorder(BorderFactory.createLineBorder(new Color(0, 128, 0), 2));
+        } else if (hasData) {
+            dayLabel.setBorder(BorderFactory.createLineBorder(Color.LIGHT_GRAY));
+            dayLabel.setBackground(Color.LIGHT_GRAY);
+        } else {
+            dayLabel.setBorder(BorderFactory.createLineBorder(Color.WHITE));
+            dayLabel.setBackground(Color.WHITE);
+        }
+    }
+
+    // Loads a neighbouring month in the background so navigating to it needs no query
+    private void prefetchOccupancy(User user, String type, YearMonth month) {
+        if (occupancyCache.containsKey(month)) {
+            return;
+        }
+        AsyncDataAccess.submit(null,
+                db -> db.getMonthOccupancy(user.getUsername(), type, month),
+                days -> occupancyCache.putIfAbsent(month, days),
+                Throwable::printStackTrace);
     }
 
     public void show() {
@@ -0,0 +1,384 @@
+package com.healthbuddy;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 全體使用者統計報表類別
+ * 不開啟視窗，計算每位使用者的目標達成率、平均步數與體重趨勢，寫成 CSV 並印出全體摘要；
+ * 使用者分段交給 ForkJoinPool 平行計算，每個工作執行緒使用自己的唯讀連線，各段的部分彙總最後再合併
+ */
+public final class CohortReport {
+    // Days of readings each user is measured over, ending today; 0 or less uses every reading
+    private static final int REPORT_DAYS = Integer.getInteger("healthbuddy.report.days", 90);
+    private static final int PARALLELISM = Integer.getInteger("healthbuddy.report.parallelism",
+            Runtime.getRuntime().availableProcessors());
+    // Users per leaf task; small enough that users with long histories do not leave other workers idle
+    private static final int USERS_PER_TASK = 32;
+
+    private CohortReport() {
+    }
+
+    /**
+     * 由命令列執行報表 (Main --report [輸出檔])，回傳程序結束碼
+     */
+    public static int run(Path output) {
+        try {
+            Summary summary = generate(output);
+            System.out.println(summary.describe());
+            System.out.println("Per-user results written to " + output.toAbsolutePath());
+            return 0;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return 1;
+        }
+    }
+
+    /**
+     * 計算所有使用者的統計並寫到 output，回傳全體摘要
+     */
+    public static Summary generate(Path output) throws SQLException, IOException {
+        long start = System.nanoTime();
+        Job job = loadUsers();
+
+        UserStats[] results = new UserStats[job.usernames.length];
+        WorkerConnections connections = new WorkerConnections();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, PARALLELISM));
+        Totals totals;
+        try {
+            totals = pool.invoke(new UserRangeTask(job, results, connections, 0, results.length));
+        } catch (ReportException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+            connections.close();
+        }
+
+        writeCsv(output, results);
+        return new Summary(totals, pool.getParallelism(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static Job loadUsers() throws SQLException {
+        List<String> usernames = new ArrayList<>();
+        double[] targetWeight = new double[64];
+        int[] targetSteps = new int[64];
+        DatabaseManager dbManager = new DatabaseManager();
+        try {
+            dbManager.connect();
+            try (ResultSet rs = dbManager.getReportUsers()) {
+                while (rs.next()) {
+                    int i = usernames.size();
+                    if (i == targetWeight.length) {
+                        targetWeight = Arrays.copyOf(targetWeight, i * 2);
+                        targetSteps = Arrays.copyOf(targetSteps, i * 2);
+                    }
+                    usernames.add(rs.getString("username"));
+                    targetWeight[i] = rs.getDouble("target_weight");
+                    targetSteps[i] = rs.getInt("target_steps");
+                }
+            }
+        } finally {
+            dbManager.closeConnection();
+        }
+        int fromDay = REPORT_DAYS > 0 ? EpochDays.today() - REPORT_DAYS + 1 : Integer.MIN_VALUE;
+        return new Job(usernames.toArray(new String[0]), targetWeight, targetSteps, fromDay);
+    }
+
+    // Readings from the database and the archive, in one pass over the merged series
+    static UserStats computeUser(DatabaseManager dbManager, String username, double targetWeight, int targetSteps,
+            int fromDay) throws SQLException {
+        HealthSeriesStore.Snapshot series = HealthSeriesStore.Snapshot.read(
+                dbManager.getSeriesRows(username, fromDay), HealthArchive.cursor(username, fromDay, Integer.MAX_VALUE));
+        HealthStatistics.Accumulator weight = new HealthStatistics.Accumulator();
+        HealthStatistics.Accumulator steps = new HealthStatistics.Accumulator();
+        int goalDays = 0;
+        int metDays = 0;
+        for (int i = 0; i < series.size(); i++) {
+            int day = series.day(i);
+            double weightValue = series.value(HealthSeriesStore.Column.WEIGHT, i);
+            double stepsValue = series.value(HealthSeriesStore.Column.STEPS, i);
+            weight.add(day, weightValue);
+            steps.add(day, stepsValue);
+            // Same rule as HealthData.compareWithGoals on days with both readings; a goal not set is met
+            if (!Double.isNaN(weightValue) && !Double.isNaN(stepsValue)) {
+                goalDays++;
+                if ((targetWeight <= 0 || weightValue <= targetWeight) && stepsValue >= targetSteps) {
+                    metDays++;
+                }
+            }
+        }
+        return new UserStats(username, series.size(), steps.getMean(),
+                goalDays > 0 ? (double) metDays / goalDays : Double.NaN, weight.getEwma(), targetWeight,
+                weight.getSlope() * 7);
+    }
+
+    private static void writeCsv(Path output, UserStats[] results) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(output)) {
+            writer.write("username,readings,average_steps,goal_attainment,current_weight,target_weight,"
+                    + "weight_trend_per_week");
+            writer.newLine();
+            for (UserStats stats : results) {
+                writer.write(csvText(stats.username));
+                writer.write(',');
+                writer.write(Integer.toString(stats.readings));
+                writer.write(',');
+                writer.write(csvNumber("%.0f", stats.averageSteps));
+                writer.write(',');
+                writer.write(csvNumber("%.3f", stats.goalAttainment));
+                writer.write(',');
+                writer.write(csvNumber("%.2f", stats.currentWeight));
+                writer.write(',');
+                writer.write(csvNumber("%.2f", stats.targetWeight > 0 ? stats.targetWeight : Double.NaN));
+                writer.write(',');
+                writer.write(csvNumber("%.4f", stats.weightTrendPerWeek));
+                writer.newLine();
+            }
+        }
+    }
+
+    // Missing values are left empty
+    private static String csvNumber(String format, double value) {
+        return Double.isNaN(value) ? "" : String.format(Locale.ROOT, format, value);
+    }
+
+    private static String csvText(String text) {
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+
+    // Inputs shared by every task; read only
+    private static final class Job {
+        private final String[] usernames;
+        private final double[] targetWeight;
+        private final int[] targetSteps;
+        private final int fromDay;
+
+        Job(String[] usernames, double[] targetWeight, int[] targetSteps, int fromDay) {
+            this.usernames = usernames;
+            this.targetWeight = targetWeight;
+            this.targetSteps = targetSteps;
+            this.fromDay = fromDay;
+        }
+    }
+
+    /**
+     * 計算 [from, to) 的使用者；每位使用者的結果寫入自己的位置，回傳這一段的部分彙總
+     */
+    private static final class UserRangeTask extends RecursiveTask<Totals> {
+        private static final long serialVersionUID = 1L;
+
+        private final Job job;
+        private final UserStats[] results;
+        private final WorkerConnections connections;
+        private final int from;
+        private final int to;
+
+        UserRangeTask(Job job, UserStats[] results, WorkerConnections connections, int from, int to) {
+            this.job = job;
+            this.results = results;
+            this.connections = connections;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (to - from <= USERS_PER_TASK) {
+                Totals totals = new Totals();
+                String username = null;
+                try {
+                    DatabaseManager dbManager = connections.get();
+                    for (int i = from; i < to; i++) {
+                        username = job.usernames[i];
+                        results[i] = computeUser(dbManager, username, job.targetWeight[i], job.targetSteps[i],
+                                job.fromDay);
+                        totals.add(results[i]);
+                    }
+                } catch (SQLException e) {
+                    throw new ReportException("Cannot compute statistics of " + username, e);
+                }
+                return totals;
+            }
+            int mid = (from + to) >>> 1;
+            UserRangeTask left = new UserRangeTask(job, results, connections, from, mid);
+            left.fork();
+            Totals right = new UserRangeTask(job, results, connections, mid, to).compute();
+            Totals totals = left.join();
+            totals.merge(right);
+            return totals;
+        }
+    }
+
+    // One read-only connection per worker thread, opened on its first task and closed when the report ends
+    private static final class WorkerConnections {
+        private final ThreadLocal<DatabaseManager> current = new ThreadLocal<>();
+        private final List<Connection> opened = Collections.synchronizedList(new ArrayList<>());
+
+        DatabaseManager get() throws SQLException {
+            DatabaseManager dbManager = current.get();
+            if (dbManager == null) {
+                Connection connection = ConnectionPool.getInstance().openReadOnly();
+                opened.add(connection);
+                dbManager = new DatabaseManager(connection);
+                current.set(dbManager);
+            }
+            return dbManager;
+        }
+
+        void close() {
+            synchronized (opened) {
+                for (Connection connection : opened) {
+                    StatementCache.discard(connection);
+                    try {
+                        connection.close();
+                    } catch (SQLException e) {
+                        System.err.println("Error closing report connection: " + e.getMessage());
+                    }
+                }
+                opened.clear();
+            }
+        }
+    }
+
+    // Carries a SQLException out of RecursiveTask.compute, which cannot throw checked exceptions
+    private static final class ReportException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ReportException(String message, SQLException cause) {
+            super(message, cause);
+        }
+
+        @Override
+        public synchronized SQLException getCause() {
+            return (SQLException) super.getCause();
+        }
+    }
+
+    /**
+     * 一位使用者的統計；沒有足夠資料的數值為 NaN
+     */
+    static final class UserStats {
+        private final String username;
+        private final int readings;
+        private final double averageSteps;
+        // Share of days meeting both the weight and the steps goal
+        private final double goalAttainment;
+        // Exponentially weighted, so one unusual reading moves it little
+        private final double currentWeight;
+        private final double targetWeight;
+        private final double weightTrendPerWeek;
+
+        UserStats(String username, int readings, double averageSteps, double goalAttainment, double currentWeight,
+                double targetWeight, double weightTrendPerWeek) {
+            this.username = username;
+            this.readings = readings;
+            this.averageSteps = averageSteps;
+            this.goalAttainment = goalAttainment;
+            this.currentWeight = currentWeight;
+            this.targetWeight = targetWeight;
+            this.weightTrendPerWeek = weightTrendPerWeek;
+        }
+    }
+
+    // Partial aggregate of a range of users; ranges are merged left to right
+    private static final class Totals {
+        private long users;
+        private long usersWithReadings;
+        private long readings;
+        // Distributions of the per-user values over the users that have them
+        private final HealthStatistics.Accumulator averageSteps = new HealthStatistics.Accumulator();
+        private final HealthStatistics.Accumulator goalAttainment = new HealthStatistics.Accumulator();
+        private final HealthStatistics.Accumulator weightTrend = new HealthStatistics.Accumulator();
+
+        void add(UserStats stats) {
+            users++;
+            if (stats.readings > 0) {
+                usersWithReadings++;
+            }
+            readings += stats.readings;
+            // Only the spread of the values is used, so every user sits at x = 0
+            averageSteps.add(0, stats.averageSteps);
+            goalAttainment.add(0, stats.goalAttainment);
+            weightTrend.add(0, stats.weightTrendPerWeek);
+        }
+
+        void merge(Totals later) {
+            users += later.users;
+            usersWithReadings += later.usersWithReadings;
+            readings += later.readings;
+            averageSteps.merge(later.averageSteps);
+            goalAttainment.merge(later.goalAttainment);
+            weightTrend.merge(later.weightTrend);
+        }
+    }
+
+    /**
+     * 全體摘要
+     */
+    public static final class Summary {
+        private final Totals totals;
+        private final int threads;
+        private final long elapsedMillis;
+
+        private Summary(Totals totals, int threads, long elapsedMillis) {
+            this.totals = totals;
+            this.threads = threads;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public long getUsers() {
+            return totals.users;
+        }
+
+        public long getUsersWithReadings() {
+            return totals.usersWithReadings;
+        }
+
+        public long getReadings() {
+            return totals.readings;
+        }
+
+        public double getMeanAverageSteps() {
+            return totals.averageSteps.getMean();
+        }
+
+        public double getMeanGoalAttainment() {
+            return totals.goalAttainment.getMean();
+        }
+
+        public double getMeanWeightTrendPerWeek() {
+            return totals.weightTrend.getMean();
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public String describe() {
+            String period = REPORT_DAYS > 0 ? "the last " + REPORT_DAYS + " days" : "all time";
+            return String.format(Locale.ROOT,
+                    "Cohort report over %s: %d users, %d with readings, %d readings in %d ms on %d threads%n"
+                            + "  Average steps per user: mean %.0f, sd %.0f%n"
+                            + "  Goal attainment: mean %.1f%% of days%n"
+                            + "  Weight trend: mean %+.3f kg/week, sd %.3f",
+                    period, totals.users, totals.usersWithReadings, totals.readings, elapsedMillis, threads,
+                    totals.averageSteps.getMean(), totals.averageSteps.getStandardDeviation(),
+                    totals.goalAttainment.getMean() * 100, totals.weightTrend.getMean(),
+                    totals.weightTrend.getStandardDeviation());
+        }
+    }
+}
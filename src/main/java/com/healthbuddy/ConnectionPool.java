@@ -0,0 +1,171 @@
+package com.healthbuddy;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 資料庫連線池類別
+ * 在整個程式中共用一組預先開啟的 SQLite 連線，避免每次操作都重新建立連線
+ */
+public class ConnectionPool {
+    private static final String DB_FILE = "health_buddy.db";
+    private static final String DB_URL = "jdbc:sqlite:" + DB_FILE;
+    static final int POOL_SIZE = Math.max(1, Integer.getInteger("healthbuddy.db.poolSize", 4));
+    private static final long BORROW_TIMEOUT_MS = Long.getLong("healthbuddy.db.borrowTimeoutMs", 5000L);
+
+    private static ConnectionPool instance;
+
+    private final DatabaseProfile profile = DatabaseProfile.active();
+    private final BlockingQueue<Connection> idleConnections;
+    private final List<Connection> allConnections = new ArrayList<>();
+
+    private ConnectionPool() throws SQLException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            System.err.println("SQLite JDBC driver not found: " + e.getMessage());
+            throw new SQLException("SQLite JDBC driver not found");
+        }
+
+        idleConnections = new ArrayBlockingQueue<>(POOL_SIZE);
+
+        boolean needsCreation = !new File(DB_FILE).exists();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            idleConnections.add(openConnection());
+        }
+
+        Connection connection = borrow();
+        try {
+            // New and existing databases are brought to the latest schema on every startup
+            SchemaMigrator.migrate(connection);
+            if (needsCreation) {
+                new DatabaseManager(connection).createDefaultData();
+            }
+            System.out.println(profile.describe(connection));
+        } finally {
+            release(connection);
+        }
+    }
+
+    /**
+     * 取得共用的連線池，第一次呼叫時載入驅動程式並預先開啟連線
+     */
+    public static synchronized ConnectionPool getInstance() throws SQLException {
+        if (instance == null) {
+            instance = new ConnectionPool();
+            Runtime.getRuntime().addShutdownHook(new Thread(instance::shutdown, "connection-pool-shutdown"));
+        }
+        return instance;
+    }
+
+    /**
+     * 借出一條連線，所有連線都在使用中時最多等待 BORROW_TIMEOUT_MS
+     */
+    public Connection borrow() throws SQLException {
+        Connection connection;
+        try {
+            connection = idleConnections.poll(BORROW_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection");
+        }
+        if (connection == null) {
+            throw new SQLException("No database connection available after " + BORROW_TIMEOUT_MS + " ms");
+        }
+
+        if (connection.isClosed()) {
+            connection = replace(connection);
+        }
+        return connection;
+    }
+
+    /**
+     * 歸還連線，並重設借用者可能修改過的交易狀態與留下的查詢游標
+     */
+    public void release(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            if (connection.isClosed()) {
+                connection = replace(connection);
+            } else {
+                // An open cursor keeps a WAL read snapshot pinned while the connection sits idle
+                StatementCache.reset(connection);
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error resetting pooled connection: " + e.getMessage());
+            try {
+                connection.close();
+                connection = replace(connection);
+            } catch (SQLException ex) {
+                System.err.println("Error replacing pooled connection: " + ex.getMessage());
+                return;
+            }
+        }
+        idleConnections.offer(connection);
+    }
+
+    /**
+     * 在連線池之外開啟一條唯讀連線，設定與池中連線相同；供需要比池更多連線的批次工作使用，由呼叫端關閉
+     */
+    public Connection openReadOnly() throws SQLException {
+        Connection connection = DriverManager.getConnection(DB_URL);
+        try (Statement stmt = connection.createStatement()) {
+            profile.apply(connection);
+            stmt.execute("PRAGMA query_only = ON");
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    /**
+     * 關閉所有連線，於程式結束時呼叫
+     */
+    public synchronized void shutdown() {
+        for (Connection connection : allConnections) {
+            StatementCache.discard(connection);
+            try {
+                if (!connection.isClosed()) {
+                    connection.close();
+                }
+            } catch (SQLException e) {
+                System.err.println("Error closing pooled connection: " + e.getMessage());
+            }
+        }
+        allConnections.clear();
+        idleConnections.clear();
+    }
+
+    private synchronized Connection openConnection() throws SQLException {
+        Connection connection = DriverManager.getConnection(DB_URL);
+        try {
+            profile.apply(connection);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        allConnections.add(connection);
+        return connection;
+    }
+
+    private synchronized Connection replace(Connection broken) throws SQLException {
+        StatementCache.discard(broken);
+        allConnections.remove(broken);
+        return openConnection();
+    }
+}
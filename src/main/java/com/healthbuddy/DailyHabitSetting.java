@@ -111,27 +111,33 @@ public class DailyHabitSetting extends JFrame {
     }
 
     public void loadDailyHabitData(String date) {
-        try {
-            DatabaseManager dbManager = new DatabaseManager();
-            dbManager.connect();
-
-            ResultSet rs = dbManager.getDailyHabit(user.getUsername(), date);
-            if (rs != null && rs.next()) {
-                waterIntakeField.setText(String.valueOf(rs.getInt("water_intake")));
-                exerciseField.setText(rs.getString("diet"));
-                sleepHoursField.setText(String.valueOf(rs.getInt("sleep_hours")));
+        // The row is copied out inside the task; the ResultSet never leaves the worker thread
+        AsyncDataAccess.submit(this, db -> {
+            try (ResultSet rs = db.getDailyHabit(user.getUsername(), date)) {
+                if (!rs.next()) {
+                    return null;
+                }
+                DailyHabit habit = new DailyHabit();
+                habit.setWaterIntake(rs.getInt("water_intake"));
+                habit.setDiet(rs.getString("diet"));
+                habit.setSleepHours(rs.getInt("sleep_hours"));
+                return habit;
+            }
+        }, habit -> {
+            if (habit != null) {
+                waterIntakeField.setText(String.valueOf(habit.getWaterIntake()));
+                exerciseField.setText(habit.getDiet());
+                sleepHoursField.setText(String.valueOf(habit.getSleepHours()));
             } else {
                 waterIntakeField.setText("");
                 exerciseField.setText("");
                 sleepHoursField.setText("");
             }
-
-            dbManager.closeConnection();
-        } catch (Exception e) {
+        }, e -> {
             JOptionPane.showMessageDialog(this, "Error loading data: " + e.getMessage(), "Error",
                     JOptionPane.ERROR_MESSAGE);
             e.printStackTrace();
-        }
+        });
     }
 
     private void handleBack() {
@@ -150,41 +156,45 @@ public class DailyHabitSetting extends JFrame {
             return;
         }
 
+        int water;
+        int sleep;
         try {
-            DatabaseManager dbManager = new DatabaseManager();
-            dbManager.connect();
+            water = Integer.parseInt(waterIntake);
+            sleep = Integer.parseInt(sleepHours);
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Error: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        AsyncDataAccess.submit(null, db -> {
             // Check if date exists
-            boolean exists = dbManager.checkDailyHabitExists(user.getUsername(), date);
-            if (exists) {
-                boolean success = dbManager.updateDailyHabit(
-                        user.getUsername(),
-                        date,
-                        Integer.parseInt(waterIntake),
-                        exercise,
-                        Integer.parseInt(sleepHours));
-                if (success) {
+            if (db.checkDailyHabitExists(user.getUsername(), date)) {
+                return db.updateDailyHabit(user.getUsername(), date, water, exercise, sleep)
+                        ? SaveResult.UPDATED : SaveResult.UPDATE_FAILED;
+            }
+            return db.insertDailyHabit(user.getUsername(), date, water, exercise, sleep)
+                    ? SaveResult.SAVED : SaveResult.SAVE_FAILED;
+        }, result -> {
+            switch (result) {
+                case UPDATED:
                     JOptionPane.showMessageDialog(this, "Data updated successfully!");
-                } else {
-                    JOptionPane.showMessageDialog(this, "Failed to update data!", "Error", JOptionPane.ERROR_MESSAGE);
-                }
-            } else {
-                boolean success = dbManager.insertDailyHabit(
-                        user.getUsername(),
-                        date,
-                        Integer.parseInt(waterIntake),
-                        exercise,
-                        Integer.parseInt(sleepHours));
-                if (success) {
+                    break;
+                case SAVED:
                     JOptionPane.showMessageDialog(this, "Data saved successfully!");
-                } else {
+                    break;
+                case UPDATE_FAILED:
+                    JOptionPane.showMessageDialog(this, "Failed to update data!", "Error", JOptionPane.ERROR_MESSAGE);
+                    break;
+                default:
                     JOptionPane.showMessageDialog(this, "Failed to save data!", "Error", JOptionPane.ERROR_MESSAGE);
-                }
             }
-
-            dbManager.closeConnection();
-        } catch (Exception e) {
+        }, e -> {
             JOptionPane.showMessageDialog(this, "Error: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
             e.printStackTrace();
-        }
+        });
+    }
+
+    private enum SaveResult {
+        SAVED, UPDATED, SAVE_FAILED, UPDATE_FAILED
     }
 }
@@ -5,21 +5,21 @@ import java.awt.*;
 import java.awt.event.ItemEvent;
 import java.awt.geom.Ellipse2D;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
 import java.sql.*;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TimeZone;
+import java.util.function.ToDoubleFunction;
 import java.text.SimpleDateFormat;
 
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
-import org.jfree.chart.plot.CategoryPlot;
-import org.jfree.chart.renderer.category.LineAndShapeRenderer;
-import org.jfree.chart.axis.CategoryAxis;
-import org.jfree.chart.axis.CategoryLabelPositions;
+import org.jfree.chart.axis.DateAxis;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.chart.axis.NumberAxis;
-import org.jfree.data.category.DefaultCategoryDataset;
+import org.jfree.data.xy.DefaultXYDataset;
 
 public class DataAnalysisPage extends JFrame {
     private User user;
@@ -29,17 +29,35 @@ public class DataAnalysisPage extends JFrame {
     private JPanel chartPanel;
     private JComboBox<String> metricCombo;
     private JComboBox<String> timeRangeCombo;
-    private DatabaseManager dbManager;
+    private JCheckBox compareCheckBox;
+    // Long ranges are reduced to about this many points before they reach the chart
+    private static final int MAX_CHART_POINTS = Integer.getInteger("healthbuddy.chart.maxPoints", 300);
+    private static final Downsampler.Mode DOWNSAMPLE_MODE =
+            Downsampler.Mode.fromName(System.getProperty("healthbuddy.chart.downsample", "lttb"));
+    // Identifies this page's chart loads so a newer selection supersedes a pending one
+    private final Object chartRequestKey = new Object();
+
+    private static final double MILLIS_PER_DAY = 86_400_000.0;
+    private static final String TARGET_SERIES = "Target Weight";
+    private static final Color SECOND_SERIES_COLOR = new Color(255, 140, 0);
+    private static final String[] CARD_TITLES = { "Average", "Recent (EWMA)", "Std Deviation", "Trend per Week",
+            "Median", "10th-90th Percentile", "Min-Max", "vs Previous Period" };
+
+    // Built once; metric and range changes only replace the series data
+    private JFreeChart chart;
+    private DefaultXYDataset dataset;
+    // Full-resolution rows of the current selection, re-downsampled for each visible window
+    private ChartData currentData;
+    private int shownFrom = -1;
+    private int shownTo = -1;
+    // Set while the dataset is replaced so the axis change it causes is not taken for a zoom
+    private boolean updatingDataset;
+    // Value labels of the summary cards, in CARD_TITLES order
+    private final JLabel[] cardValues = new JLabel[CARD_TITLES.length];
 
     public DataAnalysisPage(User user, HomePage homePage) {
         this.user = user;
         this.homePage = homePage;
-        this.dbManager = new DatabaseManager();
-        try {
-            dbManager.connect();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
         setupUI();
         // Set default selections and show chart
         metricCombo.setSelectedItem("Weight");
@@ -47,6 +65,12 @@ public class DataAnalysisPage extends JFrame {
         updateChart();
     }
 
+    @Override
+    public void dispose() {
+        AsyncDataAccess.cancel(chartRequestKey);
+        super.dispose();
+    }
+
     private void setupUI() {
         setTitle("My Healthcare Buddy - Data Analysis");
         setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
@@ -77,8 +101,10 @@ public class DataAnalysisPage extends JFrame {
         chartPanel.setBackground(Color.WHITE);
         chartPanel.setBorder(BorderFactory.createTitledBorder(
                 BorderFactory.createLineBorder(primaryColor), "Health Metrics Chart"));
+        chartPanel.add(createChart(), BorderLayout.CENTER);
 
         chartsPanel.add(chartPanel, BorderLayout.CENTER);
+        chartsPanel.add(createSummaryPanel(), BorderLayout.SOUTH);
         mainPanel.add(chartsPanel, BorderLayout.CENTER);
 
         // Back button panel
@@ -117,22 +143,55 @@ public class DataAnalysisPage extends JFrame {
         timePanel.setOpaque(false);
         timePanel.add(new JLabel("Time Range:"), BorderLayout.NORTH);
         timeRangeCombo = new JComboBox<>(new String[] {
-                "Last Week", "Last Month", "Last 3 Months"
+                "Last Week", "Last Month", "Last 3 Months", "Last Year", "All Time"
         });
         timePanel.add(timeRangeCombo, BorderLayout.CENTER);
 
+        // Overlays the period of the same length just before the selected one
+        compareCheckBox = new JCheckBox("Compare with previous period");
+        compareCheckBox.setOpaque(false);
+
         // Export Button
         JButton exportButton = createStyledButton("Export Data");
         exportButton.addActionListener(e -> exportData());
 
+        // Import Button
+        JButton importButton = createStyledButton("Import Data");
+        importButton.addActionListener(e -> importData());
+
         // Add components to control panel
         controlPanel.add(metricPanel);
         controlPanel.add(timePanel);
+        controlPanel.add(compareCheckBox);
         controlPanel.add(exportButton);
+        controlPanel.add(importButton);
 
         return controlPanel;
     }
 
+    // One card per statistic of the selected range, filled in by renderChart
+    private JPanel createSummaryPanel() {
+        JPanel summaryPanel = new JPanel(new GridLayout(2, (CARD_TITLES.length + 1) / 2, 10, 10));
+        summaryPanel.setOpaque(false);
+        summaryPanel.setBorder(BorderFactory.createEmptyBorder(10, 0, 0, 0));
+        for (int i = 0; i < CARD_TITLES.length; i++) {
+            JPanel card = new JPanel(new BorderLayout(0, 4));
+            card.setBackground(Color.WHITE);
+            card.setBorder(BorderFactory.createCompoundBorder(BorderFactory.createLineBorder(primaryColor),
+                    BorderFactory.createEmptyBorder(6, 8, 6, 8)));
+            JLabel title = new JLabel(CARD_TITLES[i]);
+            title.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 11));
+            title.setForeground(Color.GRAY);
+            cardValues[i] = new JLabel("—");
+            cardValues[i].setFont(new Font(Font.SANS_SERIF, Font.BOLD, 14));
+            cardValues[i].setForeground(primaryColor.darker());
+            card.add(title, BorderLayout.NORTH);
+            card.add(cardValues[i], BorderLayout.CENTER);
+            summaryPanel.add(card);
+        }
+        return summaryPanel;
+    }
+
     private void setupSelectionListeners() {
         metricCombo.addItemListener(e -> {
             if (e.getStateChange() == ItemEvent.SELECTED) {
@@ -145,6 +204,8 @@ public class DataAnalysisPage extends JFrame {
                 updateChart();
             }
         });
+
+        compareCheckBox.addItemListener(e -> updateChart());
     }
 
     private JButton createStyledButton(String text) {
@@ -184,112 +245,533 @@ public class DataAnalysisPage extends JFrame {
         return button;
     }
 
+    // Queries run on a background worker; the chart is built on the EDT once the data arrives
     private void updateChart() {
         String selectedMetric = (String) metricCombo.getSelectedItem();
         String timeRange = (String) timeRangeCombo.getSelectedItem();
+        boolean compare = compareCheckBox.isSelected();
+        String username = user.getUsername();
+
+        AsyncDataAccess.submit(chartRequestKey,
+                db -> loadChartData(db, username, selectedMetric, timeRange, compare),
+                data -> renderChart(selectedMetric, data),
+                e -> {
+                    e.printStackTrace();
+                    JOptionPane.showMessageDialog(this,
+                            "Error fetching data: " + e.getMessage(),
+                            "Database Error",
+                            JOptionPane.ERROR_MESSAGE);
+                });
+    }
 
-        ResultSet rs = null;
-        try {
-            rs = dbManager.getHealthData(user.getUsername(), selectedMetric, timeRange);
-            DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+    private static ChartData loadChartData(DatabaseManager dbManager, String username, String selectedMetric,
+            String timeRange, boolean compare) throws SQLException {
+        // Blood pressure has two columns and is drawn as two lines; every other metric has one
+        String[] columns = DatabaseManager.metricColumns(selectedMetric);
+        // Long ranges read weekly or monthly rollups, a few dozen rows instead of every reading
+        HealthRollups.Granularity granularity = HealthRollups.granularityFor(timeRange);
+        int endDay = EpochDays.today();
+        int startDay = DatabaseManager.getRangeStart(timeRange, endDay);
+        // "All Time" has no earlier period, so it is never compared
+        int previousStart = compare ? DatabaseManager.getPreviousRangeStart(timeRange, endDay) : Integer.MIN_VALUE;
+        boolean comparing = previousStart != Integer.MIN_VALUE;
+
+        ChartData data;
+        ChartData previous = null;
+        if (granularity != null) {
+            // A comparison reads both periods in one query and splits them at the first current bucket
+            ChartData rows = loadRollups(comparing
+                    ? dbManager.getComparisonData(username, selectedMetric, granularity, timeRange)
+                    : dbManager.getRollupData(username, selectedMetric, granularity, timeRange), columns);
+            int split = comparing ? lowerBound(rows.days, rows.rowCount, granularity.bucketStart(startDay)) : 0;
+            data = comparing ? rows.slice(split, rows.rowCount) : rows;
+            previous = comparing ? rows.slice(0, split) : null;
+        } else {
+            // Both periods are slices of the same in-memory series
+            HealthSeriesStore.Snapshot series = HealthSeriesStore.load(dbManager, username);
+            data = loadReadings(series, startDay, endDay, columns);
+            previous = comparing ? loadReadings(series, previousStart, startDay - 1, columns) : null;
+        }
+        if (previous != null) {
+            // Moved forward by the length of the period so both start at the left edge of the chart
+            int shift = startDay - previousStart;
+            for (int i = 0; i < previous.rowCount; i++) {
+                previous.days[i] += shift;
+            }
+        }
 
-            // Count total data points for date label handling
-            int dataPoints = 0;
-            while (rs.next()) {
-                dataPoints++;
-                String date = rs.getString("date");
-                double value = rs.getDouble(2);
-                dataset.addValue(value, selectedMetric, date);
-
-                // Add target weight line if metric is weight
-                if (selectedMetric.equals("Weight")) {
-                    double targetWeight = dbManager.getTargetValue(user.getUsername(), "weight");
-                    if (targetWeight > 0) {
-                        dataset.addValue(targetWeight, "Target Weight", date);
-                    }
+        // The target does not change per row, so it is read once instead of once per data point
+        double targetWeight = selectedMetric.equals("Weight") ? dbManager.getTargetValue(username, "weight") : 0;
+        String[] seriesNames = columns.length > 1 ? new String[] { "Systolic", "Diastolic" }
+                : new String[] { selectedMetric };
+
+        // The overlay averages the plotted points over a window a few points wide
+        int window = granularity == null ? 7 : granularity == HealthRollups.Granularity.WEEK ? 28 : 91;
+        double[][] rolling = new double[columns.length][data.rowCount];
+        for (int c = 0; c < columns.length; c++) {
+            HealthStatistics.rollingMean(data.days, data.values[c], 0, data.rowCount, window, rolling[c]);
+        }
+        String rollingName = granularity == null ? "7-day average"
+                : granularity == HealthRollups.Granularity.WEEK ? "4-week average" : "3-month average";
+        return new ChartData(selectedMetric, seriesNames, granularity, data.days, data.values, data.rowCount,
+                targetWeight, rolling, rollingName,
+                summarize(dbManager, username, columns, startDay, endDay, comparing ? previousStart : startDay),
+                previous);
+    }
+
+    // Summary numbers always come from the individual readings, also when the chart shows rollups.
+    // Readings in [previousStart, startDay) give the previous period's mean; none when the two are equal.
+    private static Summary[] summarize(DatabaseManager dbManager, String username, String[] columns, int startDay,
+            int endDay, int previousStart) throws SQLException {
+        HealthSeriesStore.Snapshot series = HealthSeriesStore.load(dbManager, username);
+        int previousFrom = series.lowerBound(previousStart);
+        int from = series.lowerBound(startDay);
+        int to = series.upperBound(endDay);
+        // One scratch array serves every column; the percentiles reorder it in place
+        double[] scratch = new double[to - from];
+        Summary[] summaries = new Summary[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            HealthSeriesStore.Column column = HealthSeriesStore.Column.fromColumnName(columns[c]);
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                if (series.has(column, i)) {
+                    scratch[count++] = series.value(column, i);
                 }
             }
-
-            if (dataset.getRowCount() == 0) {
-                JOptionPane.showMessageDialog(this,
-                        "No data available for the selected period",
-                        "No Data",
-                        JOptionPane.INFORMATION_MESSAGE);
-                return;
+            HealthStatistics.Accumulator previous = new HealthStatistics.Accumulator();
+            for (int i = previousFrom; i < from; i++) {
+                previous.add(series.day(i), series.value(column, i));
             }
+            summaries[c] = new Summary(series.statistics(column, startDay),
+                    HealthStatistics.selectPercentile(scratch, count, 0.5),
+                    HealthStatistics.selectPercentile(scratch, count, 0.1),
+                    HealthStatistics.selectPercentile(scratch, count, 0.9),
+                    previous.getMean());
+        }
+        return summaries;
+    }
+
+    // Slices [fromDay, toDay] out of the user's in-memory series; only the first load reaches the database
+    private static ChartData loadReadings(HealthSeriesStore.Snapshot series, int fromDay, int toDay,
+            String[] columns) {
+        int from = series.lowerBound(fromDay);
+        int to = series.upperBound(toDay);
 
-            JFreeChart chart = ChartFactory.createLineChart(
-                    selectedMetric + " Progress",
-                    "Date",
-                    getYAxisLabel(selectedMetric),
-                    dataset);
-
-            // Customize chart appearance
-            chart.setBackgroundPaint(Color.WHITE);
-            CategoryPlot plot = chart.getCategoryPlot();
-            LineAndShapeRenderer renderer = new LineAndShapeRenderer();
-
-            // Main metric line
-            renderer.setSeriesShapesVisible(0, true);
-            renderer.setSeriesShape(0, new Ellipse2D.Double(-4, -4, 8, 8));
-            renderer.setSeriesPaint(0, primaryColor);
-            renderer.setSeriesStroke(0, new BasicStroke(2.0f));
-
-            // Target weight line if present
-            if (selectedMetric.equals("Weight")) {
-                renderer.setSeriesShapesVisible(1, false); // No points on target line
-                renderer.setSeriesPaint(1, new Color(220, 20, 60)); // Red color
-                renderer.setSeriesStroke(1, new BasicStroke(1.0f, BasicStroke.CAP_BUTT,
-                        BasicStroke.JOIN_MITER, 10.0f, new float[] { 10.0f }, 0.0f)); // Dashed line
+        HealthSeriesStore.Column[] seriesColumns = new HealthSeriesStore.Column[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            seriesColumns[c] = HealthSeriesStore.Column.fromColumnName(columns[c]);
+        }
+        double[] days = new double[to - from];
+        double[][] values = new double[columns.length][to - from];
+        int rowCount = 0;
+        for (int i = from; i < to; i++) {
+            // Days without this metric are skipped rather than plotted as 0; later columns may still be NaN
+            if (!series.has(seriesColumns[0], i)) {
+                continue;
+            }
+            days[rowCount] = series.day(i);
+            for (int c = 0; c < columns.length; c++) {
+                values[c][rowCount] = series.value(seriesColumns[c], i);
             }
+            rowCount++;
+        }
+        return new ChartData(days, values, rowCount);
+    }
 
-            plot.setRenderer(renderer);
-            plot.setBackgroundPaint(Color.WHITE);
-            plot.setRangeGridlinePaint(Color.LIGHT_GRAY);
-            plot.setDomainGridlinePaint(Color.LIGHT_GRAY);
-
-            // Handle date labels based on number of data points
-            // Handle date labels based on number of data points
-            CategoryAxis domainAxis = plot.getDomainAxis();
-            if (dataPoints > 15) {
-                int skipFactor = dataPoints / 10; // Show approximately 10 labels
-                domainAxis.setCategoryLabelPositions(CategoryLabelPositions.UP_45);
-
-                // Ensure we show at least first, last, and some intermediate dates
-                for (int i = 0; i < dataset.getColumnCount(); i++) {
-                    if (i != 0 && i != dataset.getColumnCount() - 1 && i % skipFactor != 0) {
-                        // Hide labels except first, last, and every skipFactor-th label
-                        domainAxis.setTickLabelPaint(dataset.getColumnKey(i), new Color(0, 0, 0, 0));
+    private static ChartData loadRollups(ResultSet rollups, String[] columns) throws SQLException {
+        double[] days = new double[64];
+        double[][] values = new double[columns.length][64];
+        int rowCount = 0;
+        try (ResultSet rs = rollups) {
+            while (rs.next()) {
+                int bucket = rs.getInt("bucket_start");
+                // One row per bucket and column, with a bucket's columns next to each other
+                if (rowCount == 0 || days[rowCount - 1] != bucket) {
+                    if (rowCount == days.length) {
+                        days = Arrays.copyOf(days, rowCount * 2);
+                        for (int c = 0; c < columns.length; c++) {
+                            values[c] = Arrays.copyOf(values[c], rowCount * 2);
+                        }
+                    }
+                    days[rowCount] = bucket;
+                    for (int c = 0; c < columns.length; c++) {
+                        values[c][rowCount] = Double.NaN;
                     }
+                    rowCount++;
                 }
-            } else {
-                domainAxis.setCategoryLabelPositions(CategoryLabelPositions.UP_45);
+                // Each bucket is plotted at its first day as the mean of its readings
+                int c = Arrays.asList(columns).indexOf(rs.getString("metric"));
+                values[c][rowCount - 1] = rs.getDouble("sum_value") / rs.getLong("count");
             }
+        }
+        return new ChartData(days, values, rowCount);
+    }
+
+    private ChartPanel createChart() {
+        dataset = new DefaultXYDataset();
+        chart = ChartFactory.createTimeSeriesChart("", "Date", "", dataset, true, true, false);
+
+        // Customize chart appearance
+        chart.setBackgroundPaint(Color.WHITE);
+        XYPlot plot = chart.getXYPlot();
+        XYLineAndShapeRenderer renderer = new XYLineAndShapeRenderer();
+
+        // Series styles depend on how many lines the metric has, see styleSeries
+        plot.setRenderer(renderer);
+        plot.setBackgroundPaint(Color.WHITE);
+        plot.setRangeGridlinePaint(Color.LIGHT_GRAY);
+        plot.setDomainGridlinePaint(Color.LIGHT_GRAY);
+
+        // Epoch days are plotted as UTC midnights so the local offset never moves a reading to another day
+        DateAxis domainAxis = (DateAxis) plot.getDomainAxis();
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        dateFormat.setTimeZone(utc);
+        domainAxis.setTimeZone(utc);
+        domainAxis.setDateFormatOverride(dateFormat);
+        domainAxis.setVerticalTickLabels(true);
+        domainAxis.addChangeListener(e -> onDomainRangeChanged());
+
+        NumberAxis rangeAxis = (NumberAxis) plot.getRangeAxis();
+        rangeAxis.setTickLabelFont(new Font(Font.SANS_SERIF, Font.PLAIN, 11));
+        rangeAxis.setAutoRangeIncludesZero(false);
+
+        ChartPanel panel = new ChartPanel(chart);
+        panel.setPreferredSize(new Dimension(800, 500));
+        // Drag or scroll to zoom into dates; zooming in brings back the points hidden by downsampling
+        panel.setRangeZoomable(false);
+        panel.setMouseWheelEnabled(true);
+        return panel;
+    }
 
-            NumberAxis rangeAxis = (NumberAxis) plot.getRangeAxis();
-            rangeAxis.setTickLabelFont(new Font(Font.SANS_SERIF, Font.PLAIN, 11));
+    private void renderChart(String selectedMetric, ChartData data) {
+        updateSummaryCards(selectedMetric, data.summaries);
+        if (data.rowCount == 0) {
+            clearChart(selectedMetric);
+            JOptionPane.showMessageDialog(this,
+                    "No data available for the selected period",
+                    "No Data",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
 
-            ChartPanel chartPanel = new ChartPanel(chart);
-            chartPanel.setPreferredSize(new Dimension(800, 500));
+        currentData = data;
+        shownFrom = -1;
+        shownTo = -1;
+        XYPlot plot = chart.getXYPlot();
+        plot.getRangeAxis().setLabel(getYAxisLabel(selectedMetric));
+        // A new selection always starts zoomed out
+        updatingDataset = true;
+        try {
+            plot.getDomainAxis().setAutoRange(true);
+        } finally {
+            updatingDataset = false;
+        }
+        showWindow(0, data.rowCount);
+    }
 
-            this.chartPanel.removeAll();
-            this.chartPanel.add(chartPanel, BorderLayout.CENTER);
-            this.chartPanel.revalidate();
-            this.chartPanel.repaint();
+    // An empty selection must not leave the previous selection's lines under the new metric's cards
+    private void clearChart(String selectedMetric) {
+        currentData = null;
+        shownFrom = -1;
+        shownTo = -1;
+        XYPlot plot = chart.getXYPlot();
+        updatingDataset = true;
+        plot.setNotify(false);
+        try {
+            chart.setTitle(selectedMetric + " Progress");
+            plot.getRangeAxis().setLabel(getYAxisLabel(selectedMetric));
+            for (int i = dataset.getSeriesCount() - 1; i >= 0; i--) {
+                dataset.removeSeries(dataset.getSeriesKey(i));
+            }
+        } finally {
+            plot.setNotify(true);
+            updatingDataset = false;
+        }
+    }
 
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this,
-                    "Error fetching data: " + e.getMessage(),
-                    "Database Error",
-                    JOptionPane.ERROR_MESSAGE);
+    private void updateSummaryCards(String metric, Summary[] summaries) {
+        String format = metric.equals("Weight") || metric.equals("BMI") ? "%.1f" : "%.0f";
+        String unit = getUnit(metric);
+        cardValues[0].setText(formatValues(summaries, format, unit, summary -> summary.accumulator.getMean()));
+        cardValues[1].setText(formatValues(summaries, format, unit, summary -> summary.accumulator.getEwma()));
+        cardValues[2].setText(formatValues(summaries, format, unit,
+                summary -> summary.accumulator.getStandardDeviation()));
+        cardValues[3].setText(formatValues(summaries, "%+.2f", unit, summary -> summary.accumulator.getSlope() * 7));
+        cardValues[4].setText(formatValues(summaries, format, unit, summary -> summary.median));
+        cardValues[5].setText(formatValues(summaries, format, "", summary -> summary.p10) + " - "
+                + formatValues(summaries, format, unit, summary -> summary.p90));
+        cardValues[6].setText(formatValues(summaries, format, "", summary -> summary.accumulator.getMin()) + " - "
+                + formatValues(summaries, format, unit, summary -> summary.accumulator.getMax()));
+        // Change of the average against the previous period, in percent
+        cardValues[7].setText(formatValues(summaries, "%+.1f%%", "", DataAnalysisPage::percentChange));
+    }
+
+    // NaN, shown as "—", when the previous period has no readings or averaged zero (e.g. no steps)
+    private static double percentChange(Summary summary) {
+        double previousMean = summary.previousMean;
+        if (Double.isNaN(previousMean) || previousMean == 0) {
+            return Double.NaN;
+        }
+        return (summary.accumulator.getMean() - previousMean) / previousMean * 100;
+    }
+
+    // Blood pressure shows systolic/diastolic pairs; a statistic without enough readings shows "—"
+    private static String formatValues(Summary[] summaries, String format, String unit,
+            ToDoubleFunction<Summary> statistic) {
+        StringBuilder text = new StringBuilder();
+        for (int c = 0; c < summaries.length; c++) {
+            double value = statistic.applyAsDouble(summaries[c]);
+            if (c > 0) {
+                text.append('/');
+            }
+            text.append(Double.isNaN(value) ? "—" : String.format(format, value));
+        }
+        return unit.isEmpty() ? text.toString() : text + " " + unit;
+    }
+
+    private void onDomainRangeChanged() {
+        if (updatingDataset || currentData == null) {
+            return;
+        }
+        DateAxis domainAxis = (DateAxis) chart.getXYPlot().getDomainAxis();
+        if (domainAxis.isAutoRange()) {
+            showWindow(0, currentData.rowCount);
+            return;
+        }
+        // Keep one point beyond each edge so the line runs off the visible area instead of stopping short
+        ChartData data = currentData;
+        int from = lowerBound(data.days, data.rowCount, domainAxis.getLowerBound() / MILLIS_PER_DAY);
+        int to = lowerBound(data.days, data.rowCount, domainAxis.getUpperBound() / MILLIS_PER_DAY);
+        showWindow(Math.max(0, from - 1), Math.min(data.rowCount, to + 1));
+    }
+
+    // Downsamples rows [from, to) of the current data and swaps them into the existing dataset
+    private void showWindow(int from, int to) {
+        if (from == shownFrom && to == shownTo) {
+            return;
+        }
+        shownFrom = from;
+        shownTo = to;
+        ChartData data = currentData;
+        // The first line picks the points and the others follow, so their readings stay on the same days
+        int[] selected = Downsampler.downsample(DOWNSAMPLE_MODE, data.days, data.values[0], from, to,
+                MAX_CHART_POINTS);
+
+        double[][][] series = new double[data.values.length][2][selected.length];
+        double[][][] rolling = new double[data.values.length][2][selected.length];
+        for (int s = 0; s < series.length; s++) {
+            for (int i = 0; i < selected.length; i++) {
+                series[s][0][i] = data.days[selected[i]] * MILLIS_PER_DAY;
+                series[s][1][i] = data.values[s][selected[i]];
+                rolling[s][0][i] = series[s][0][i];
+                rolling[s][1][i] = data.rolling[s][selected[i]];
+            }
+        }
+
+        String title = data.metric + " Progress";
+        String unit = "days";
+        if (data.granularity != null) {
+            unit = data.granularity.getId() + "s";
+            title += " (" + data.granularity.getId() + "ly averages)";
+        }
+        if (selected.length < to - from) {
+            title += String.format(" (%d of %d %s shown)", selected.length, to - from, unit);
+        }
+
+        XYPlot plot = chart.getXYPlot();
+        updatingDataset = true;
+        plot.setNotify(false);
+        try {
+            chart.setTitle(title);
+            // Series are re-added in a fixed order so the renderer's per-index styles stay attached
+            for (int i = dataset.getSeriesCount() - 1; i >= 0; i--) {
+                dataset.removeSeries(dataset.getSeriesKey(i));
+            }
+            for (int s = 0; s < series.length; s++) {
+                dataset.addSeries(data.seriesNames[s], series[s]);
+            }
+            for (int s = 0; s < series.length; s++) {
+                dataset.addSeries(data.seriesNames[s] + " (" + data.rollingName + ")", rolling[s]);
+            }
+            // The least-squares line of the whole range, drawn across the visible days
+            double firstDay = data.days[selected[0]];
+            double lastDay = data.days[selected[selected.length - 1]];
+            for (int s = 0; s < series.length; s++) {
+                HealthStatistics.Accumulator accumulator = data.summaries[s].accumulator;
+                dataset.addSeries(data.seriesNames[s] + " trend", new double[][] {
+                        { firstDay * MILLIS_PER_DAY, lastDay * MILLIS_PER_DAY },
+                        { accumulator.trendAt(firstDay), accumulator.trendAt(lastDay) } });
+            }
+            int previousSeries = data.previous != null ? addPreviousPeriod(data, from, to) : 0;
+            styleSeries((XYLineAndShapeRenderer) plot.getRenderer(), series.length, previousSeries);
+            // Add target weight line if metric is weight; two points are enough for a flat line
+            if (data.targetWeight > 0 && selected.length > 0) {
+                double first = series[0][0][0];
+                double last = series[0][0][selected.length - 1];
+                dataset.addSeries(TARGET_SERIES, new double[][] { { first, last },
+                        { data.targetWeight, data.targetWeight } });
+            }
         } finally {
-            try {
-                if (rs != null)
-                    rs.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
+            plot.setNotify(true);
+            updatingDataset = false;
+        }
+    }
+
+    // Adds the previous period's lines for the days shown of the current one; returns how many were added
+    private int addPreviousPeriod(ChartData data, int from, int to) {
+        ChartData previous = data.previous;
+        int previousFrom = from == 0 ? 0
+                : Math.max(0, lowerBound(previous.days, previous.rowCount, data.days[from]) - 1);
+        int previousTo = to == data.rowCount ? previous.rowCount
+                : Math.min(previous.rowCount, lowerBound(previous.days, previous.rowCount, data.days[to - 1] + 1) + 1);
+        int[] selected = Downsampler.downsample(DOWNSAMPLE_MODE, previous.days, previous.values[0], previousFrom,
+                previousTo, MAX_CHART_POINTS);
+        for (int s = 0; s < previous.values.length; s++) {
+            double[][] points = new double[2][selected.length];
+            for (int i = 0; i < selected.length; i++) {
+                points[0][i] = previous.days[selected[i]] * MILLIS_PER_DAY;
+                points[1][i] = previous.values[s][selected[i]];
             }
+            dataset.addSeries(data.seriesNames[s] + " (previous period)", points);
+        }
+        return previous.values.length;
+    }
+
+    // Metric lines come first, then their rolling averages, their trend lines, the previous period's lines
+    // and the dashed target line
+    private void styleSeries(XYLineAndShapeRenderer renderer, int metricSeries, int previousSeries) {
+        for (int i = 0; i < metricSeries; i++) {
+            Color color = i == 0 ? primaryColor : SECOND_SERIES_COLOR;
+            renderer.setSeriesShapesVisible(i, true);
+            renderer.setSeriesShape(i, new Ellipse2D.Double(-4, -4, 8, 8));
+            renderer.setSeriesPaint(i, color);
+            renderer.setSeriesStroke(i, new BasicStroke(2.0f));
+
+            int average = metricSeries + i;
+            renderer.setSeriesShapesVisible(average, false);
+            renderer.setSeriesPaint(average, color.darker());
+            renderer.setSeriesStroke(average, new BasicStroke(3.0f));
+
+            int trend = 2 * metricSeries + i;
+            renderer.setSeriesShapesVisible(trend, false);
+            renderer.setSeriesPaint(trend, Color.DARK_GRAY);
+            renderer.setSeriesStroke(trend, new BasicStroke(1.5f, BasicStroke.CAP_BUTT,
+                    BasicStroke.JOIN_MITER, 10.0f, new float[] { 2.0f, 4.0f }, 0.0f)); // Dotted line
+        }
+
+        for (int i = 0; i < previousSeries; i++) {
+            Color color = i == 0 ? primaryColor : SECOND_SERIES_COLOR;
+            int previous = 3 * metricSeries + i;
+            renderer.setSeriesShapesVisible(previous, false);
+            renderer.setSeriesPaint(previous, new Color(color.getRed(), color.getGreen(), color.getBlue(), 120));
+            renderer.setSeriesStroke(previous, new BasicStroke(1.5f, BasicStroke.CAP_BUTT,
+                    BasicStroke.JOIN_MITER, 10.0f, new float[] { 6.0f, 3.0f }, 0.0f));
+        }
+
+        // Target weight line if present
+        int target = 3 * metricSeries + previousSeries;
+        renderer.setSeriesShapesVisible(target, false); // No points on target line
+        renderer.setSeriesPaint(target, new Color(220, 20, 60)); // Red color
+        renderer.setSeriesStroke(target, new BasicStroke(1.0f, BasicStroke.CAP_BUTT,
+                BasicStroke.JOIN_MITER, 10.0f, new float[] { 10.0f }, 0.0f)); // Dashed line
+    }
+
+    // First index whose day is not before the given day
+    private static int lowerBound(double[] days, int count, double day) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days[mid] < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static class ChartData {
+        private final String metric;
+        // One legend entry per line; blood pressure has systolic and diastolic
+        private final String[] seriesNames;
+        // Null when every reading is plotted, otherwise the rollup each point averages
+        private final HealthRollups.Granularity granularity;
+        // Epoch days and one value array per line in date order; only the first rowCount entries are used.
+        // Missing readings are NaN, which the chart draws as a gap.
+        private final double[] days;
+        private final double[][] values;
+        private final int rowCount;
+        private final double targetWeight;
+        // Rolling mean of each line at every row, and the statistics of each line over the whole range
+        private final double[][] rolling;
+        private final String rollingName;
+        private final Summary[] summaries;
+        // The previous period with its days moved onto the current one, or null without a comparison
+        private final ChartData previous;
+
+        // Rows only, as read from the series or the rollups
+        ChartData(double[] days, double[][] values, int rowCount) {
+            this(null, null, null, days, values, rowCount, 0, null, null, null, null);
+        }
+
+        ChartData(String metric, String[] seriesNames, HealthRollups.Granularity granularity, double[] days,
+                double[][] values, int rowCount, double targetWeight, double[][] rolling, String rollingName,
+                Summary[] summaries, ChartData previous) {
+            this.metric = metric;
+            this.seriesNames = seriesNames;
+            this.granularity = granularity;
+            this.days = days;
+            this.values = values;
+            this.rowCount = rowCount;
+            this.targetWeight = targetWeight;
+            this.rolling = rolling;
+            this.rollingName = rollingName;
+            this.summaries = summaries;
+            this.previous = previous;
+        }
+
+        // Copy of rows [from, to)
+        ChartData slice(int from, int to) {
+            double[][] sliced = new double[values.length][];
+            for (int c = 0; c < values.length; c++) {
+                sliced[c] = Arrays.copyOfRange(values[c], from, to);
+            }
+            return new ChartData(Arrays.copyOfRange(days, from, to), sliced, to - from);
+        }
+    }
+
+    private static class Summary {
+        private final HealthStatistics.Accumulator accumulator;
+        private final double median;
+        private final double p10;
+        private final double p90;
+        // NaN without a comparison
+        private final double previousMean;
+
+        Summary(HealthStatistics.Accumulator accumulator, double median, double p10, double p90,
+                double previousMean) {
+            this.accumulator = accumulator;
+            this.median = median;
+            this.p10 = p10;
+            this.p90 = p90;
+            this.previousMean = previousMean;
+        }
+    }
+
+    private String getUnit(String metric) {
+        switch (metric) {
+            case "Weight":
+                return "kg";
+            case "Steps":
+                return "steps";
+            case "Blood Pressure":
+                return "mmHg";
+            case "Heart Rate":
+                return "bpm";
+            default:
+                return "";
         }
     }
 
@@ -312,44 +794,143 @@ public class DataAnalysisPage extends JFrame {
 
     private void exportData() {
         JFileChooser fileChooser = new JFileChooser();
-        fileChooser.setDialogTitle("Export Data");
+        fileChooser.setDialogTitle("Export Data (.csv, .jsonl or .hbc, add .gz to compress)");
         fileChooser.setSelectedFile(new File("health_data.csv"));
+        if (fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = fileChooser.getSelectedFile();
 
-        if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
-            File file = fileChooser.getSelectedFile();
-            try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
-                // Write header
-                writer.println("Date,Metric,Value");
-
-                String selectedMetric = (String) metricCombo.getSelectedItem();
-                String timeRange = (String) timeRangeCombo.getSelectedItem();
-
-                ResultSet rs = dbManager.getHealthData(user.getUsername(), selectedMetric, timeRange);
-
-                // Add data to list first to avoid ResultSet issues
-                while (rs.next()) {
-                    String date = rs.getString("date");
-                    String value;
-                    if (selectedMetric.equals("Blood Pressure")) {
-                        value = rs.getString(2); // Get blood pressure as string
-                    } else {
-                        value = String.format("%.2f", rs.getDouble(2));
-                    }
-                    writer.printf("%s,%s,%s%n", date, selectedMetric, value);
+        String timeRange = (String) timeRangeCombo.getSelectedItem();
+        Object[] options = { "Selected Range (" + timeRange + ")", "Full History", "Cancel" };
+        int choice = JOptionPane.showOptionDialog(this,
+                "Export every metric and daily habit for:",
+                "Export Range",
+                JOptionPane.DEFAULT_OPTION,
+                JOptionPane.QUESTION_MESSAGE,
+                null, options, options[0]);
+        if (choice != 0 && choice != 1) {
+            return;
+        }
+        int toDay = EpochDays.today();
+        int fromDay = choice == 0 ? DatabaseManager.getRangeStart(timeRange, toDay) : Integer.MIN_VALUE;
+        String username = user.getUsername();
+
+        ProgressMonitor monitor = new ProgressMonitor(this, "Exporting to " + file.getName(), "", 0, 100);
+        monitor.setMillisToDecideToPopup(200);
+        // The monitor's Cancel button is polled, since progress events stop while a percent is unchanged
+        Timer cancelCheck = new Timer(200, null);
+
+        // Streams on the bulk lane's pooled connection; progress is reported through SwingWorker's progress property
+        SwingWorker<HealthDataExporter.ExportResult, Void> worker =
+                new SwingWorker<HealthDataExporter.ExportResult, Void>() {
+            @Override
+            protected HealthDataExporter.ExportResult doInBackground() throws Exception {
+                DatabaseManager exportManager = new DatabaseManager();
+                try {
+                    exportManager.connect();
+                    HealthDataExporter exporter = new HealthDataExporter(exportManager);
+                    return exporter.exportFile(Collections.singletonList(username), fromDay, toDay, file.toPath(),
+                            (rows, total) -> setProgress(total > 0 ? (int) Math.min(100, rows * 100 / total) : 100));
+                } finally {
+                    exportManager.closeConnection();
                 }
+            }
 
-                JOptionPane.showMessageDialog(this,
-                        "Data exported successfully to " + file.getName(),
-                        "Export Complete",
-                        JOptionPane.INFORMATION_MESSAGE);
-
-            } catch (IOException | SQLException e) {
-                e.printStackTrace();
-                JOptionPane.showMessageDialog(this,
-                        "Error exporting data: " + e.getMessage(),
-                        "Export Error",
-                        JOptionPane.ERROR_MESSAGE);
+            @Override
+            protected void done() {
+                cancelCheck.stop();
+                monitor.close();
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    HealthDataExporter.ExportResult result = get();
+                    JOptionPane.showMessageDialog(DataAnalysisPage.this,
+                            String.format("Exported %d rows to %s (%,d bytes, %.0f rows/s).",
+                                    result.getRowsWritten(), file.getName(), result.getBytesWritten(),
+                                    result.getRowsPerSecond()),
+                            "Export Complete",
+                            JOptionPane.INFORMATION_MESSAGE);
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    cause.printStackTrace();
+                    JOptionPane.showMessageDialog(DataAnalysisPage.this,
+                            "Error exporting data: " + cause.getMessage(),
+                            "Export Error",
+                            JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        worker.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) {
+                monitor.setProgress(worker.getProgress());
+                monitor.setNote(worker.getProgress() + "% written");
             }
+        });
+        // Cancelling interrupts the worker, which stops the exporter at its next progress check
+        cancelCheck.addActionListener(e -> {
+            if (monitor.isCanceled()) {
+                worker.cancel(true);
+            }
+        });
+        cancelCheck.start();
+        AsyncDataAccess.executeBulk(worker);
+    }
+
+    private void importData() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Import Data (CSV or JSON Lines)");
+        if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
         }
+        File file = fileChooser.getSelectedFile();
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+
+        // Large files take a while, so the import runs on the bulk lane's pooled connection off the EDT
+        AsyncDataAccess.executeBulk(new SwingWorker<HealthDataImporter.ImportResult, Void>() {
+            @Override
+            protected HealthDataImporter.ImportResult doInBackground() throws Exception {
+                DatabaseManager importManager = new DatabaseManager();
+                try {
+                    importManager.connect();
+                    User loadedUser = importManager.getUser(user.getUsername());
+                    double height = loadedUser != null ? loadedUser.getProfile().getHeight() : 0.0;
+                    HealthDataImporter importer = new HealthDataImporter(importManager, user.getUsername(),
+                            height, DatabaseManager.DEFAULT_COMMIT_INTERVAL);
+                    return importer.importFile(file.toPath());
+                } finally {
+                    importManager.closeConnection();
+                }
+            }
+
+            @Override
+            protected void done() {
+                setCursor(Cursor.getDefaultCursor());
+                try {
+                    HealthDataImporter.ImportResult result = get();
+                    StringBuilder message = new StringBuilder(String.format(
+                            "Imported %d rows from %s (%.0f rows/s).%nSkipped habit-only rows: %d%nRejected rows: %d",
+                            result.getRowsImported(), file.getName(), result.getRowsPerSecond(),
+                            result.getRowsSkipped(), result.getRowsRejected()));
+                    for (String error : result.getErrors()) {
+                        message.append(System.lineSeparator()).append("  ").append(error);
+                    }
+                    JOptionPane.showMessageDialog(DataAnalysisPage.this,
+                            message.toString(),
+                            "Import Complete",
+                            result.getRowsRejected() > 0 ? JOptionPane.WARNING_MESSAGE
+                                    : JOptionPane.INFORMATION_MESSAGE);
+                    updateChart();
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    cause.printStackTrace();
+                    JOptionPane.showMessageDialog(DataAnalysisPage.this,
+                            "Error importing data: " + cause.getMessage(),
+                            "Import Error",
+                            JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        });
     }
-}
\ No newline at end of file
+}
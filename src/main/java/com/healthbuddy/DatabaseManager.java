@@ -1,37 +1,42 @@
 package com.healthbuddy;
 
+import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.io.File;
+import java.sql.Types;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
 
 public class DatabaseManager {
-    private static final String DB_URL = "jdbc:sqlite:health_buddy.db";
-    private Connection connection;
+    public static final int DEFAULT_COMMIT_INTERVAL = 1000;
 
-    public void connect() throws SQLException {
-        try {
-            Class.forName("org.sqlite.JDBC");
+    private Connection connection;
 
-            File dbFile = new File("health_buddy.db");
-            boolean needsCreation = !dbFile.exists();
+    public DatabaseManager() {
+    }
 
-            connection = DriverManager.getConnection(DB_URL);
+    // Wraps a connection the caller already owns, e.g. during pool initialization
+    DatabaseManager(Connection connection) {
+        this.connection = connection;
+    }
 
-            if (needsCreation) {
-                createTables();
-                createDefaultData();
-            }
-        } catch (ClassNotFoundException e) {
-            System.err.println("SQLite JDBC driver not found: " + e.getMessage());
-            throw new SQLException("SQLite JDBC driver not found");
+    // Borrows a warmed connection from the shared pool; release it with closeConnection()
+    public void connect() throws SQLException {
+        if (connection != null) {
+            return;
+        }
+        try {
+            connection = ConnectionPool.getInstance().borrow();
         } catch (SQLException e) {
             System.err.println("Database connection error: " + e.getMessage());
             throw e;
@@ -42,60 +47,17 @@ public class DatabaseManager {
         return connection;
     }
 
-    public void createTables() {
-        String[] createTableSQL = {
-                "DROP TABLE IF EXISTS users",
-                "CREATE TABLE users (" +
-                        "username TEXT PRIMARY KEY," +
-                        "password TEXT NOT NULL," +
-                        "salt TEXT NOT NULL," +
-                        "name TEXT," +
-                        "age INTEGER," +
-                        "gender TEXT," +
-                        "height REAL," +
-                        "target_weight REAL" +
-                        ")",
-                "CREATE TABLE IF NOT EXISTS health_data (" +
-                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                        "username TEXT," +
-                        "date DATE NOT NULL," +
-                        "weight REAL," +
-                        "bmi REAL," +
-                        "steps INTEGER," +
-                        "blood_pressure TEXT," +
-                        "heart_rate INTEGER," +
-                        "FOREIGN KEY(username) REFERENCES users(username)" +
-                        ")",
-                "CREATE TABLE IF NOT EXISTS daily_habits (" +
-                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                        "username TEXT," +
-                        "date DATE NOT NULL," +
-                        "water_intake INTEGER," +
-                        "diet TEXT," +
-                        "sleep_hours INTEGER," +
-                        "FOREIGN KEY(username) REFERENCES users(username)" +
-                        ")",
-                "CREATE TABLE IF NOT EXISTS health_goals (" +
-                        "username TEXT PRIMARY KEY," +
-                        "target_weight REAL," +
-                        "target_steps INTEGER," +
-                        "target_water_intake INTEGER," +
-                        "target_sleep_hours INTEGER," +
-                        "FOREIGN KEY(username) REFERENCES users(username)" +
-                        ")"
-        };
+    // Cached statements belong to the connection; callers must not close them
+    private PreparedStatement prepare(String sql) throws SQLException {
+        return StatementCache.forConnection(connection).prepare(sql);
+    }
 
-        try (Statement stmt = connection.createStatement()) {
-            for (String sql : createTableSQL) {
-                stmt.execute(sql);
-            }
-        } catch (SQLException e) {
-            System.err.println("Error creating tables: " + e.getMessage());
-            e.printStackTrace();
-        }
+    // Result sets handed to callers are tracked, so the pool can close any left open when the connection returns
+    private ResultSet query(PreparedStatement pstmt) throws SQLException {
+        return StatementCache.forConnection(connection).executeQuery(pstmt);
     }
 
-    private void createDefaultData() {
+    void createDefaultData() {
         try (Statement stmt = connection.createStatement()) {
             // Insert test user with hashed password
             String salt = PasswordSecurity.generateSalt();
@@ -103,25 +65,23 @@ public class DatabaseManager {
             stmt.execute("INSERT OR IGNORE INTO users (username, password, salt, name, age, gender, height, target_weight) " +
                     "VALUES ('test', '" + hashedPassword + "', '" + salt + "', 'Test User', 25, 'Male', 175.0, 70.0)");
 
-            // Get current date for sample data
-            Calendar cal = Calendar.getInstance();
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-
             // Create sample data for last 90 days
+            List<HealthData> samples = new ArrayList<>();
+            LocalDate today = LocalDate.now();
             for (int i = 0; i < 90; i++) {
-                String date = sdf.format(cal.getTime());
+                LocalDate date = today.minusDays(i);
 
                 // Create realistic trends with some random variation
                 double baseWeight = 75.5 - (i * 0.05); // Slow weight loss trend
                 double randomWeight = baseWeight + (Math.random() * 0.4 - 0.2); // ±0.2 kg variation
                 double weight = Math.round(randomWeight * 10.0) / 10.0;
 
-                double bmi = weight / Math.pow(175.0 / 100, 2);
+                double bmi = Math.round(weight / Math.pow(175.0 / 100, 2) * 10.0) / 10.0;
 
                 // Steps with weekend variation and random noise
                 int baseSteps = 8500 + (i * 20); // Gradually increasing base steps
-                int weekendReduction = (cal.get(Calendar.DAY_OF_WEEK) == Calendar.SATURDAY ||
-                        cal.get(Calendar.DAY_OF_WEEK) == Calendar.SUNDAY) ? 2000 : 0;
+                int weekendReduction = (date.getDayOfWeek() == DayOfWeek.SATURDAY ||
+                        date.getDayOfWeek() == DayOfWeek.SUNDAY) ? 2000 : 0;
                 int steps = baseSteps - weekendReduction + (int) (Math.random() * 1000 - 500);
 
                 // Blood pressure with slight variation
@@ -135,46 +95,200 @@ public class DatabaseManager {
                 int stepEffect = (steps > 10000) ? 2 : 0; // Higher heart rate on active days
                 int heartRate = baseHeartRate - stepEffect + (int) (Math.random() * 4 - 2);
 
-                String sql = String.format(
-                        "INSERT OR IGNORE INTO health_data (username, date, weight, bmi, steps, blood_pressure, heart_rate) "
-                                +
-                                "VALUES ('test', '%s', %.1f, %.1f, %d, '%d/%d', %d)",
-                        date, weight, bmi, steps, systolic, diastolic, heartRate);
-                stmt.execute(sql);
-
-                // Move to previous day
-                cal.add(Calendar.DAY_OF_MONTH, -1);
+                HealthData sample = new HealthData();
+                sample.setDate(date);
+                sample.setWeight(weight);
+                sample.setBmi(bmi);
+                sample.setSteps(steps);
+                sample.setSystolic(systolic);
+                sample.setDiastolic(diastolic);
+                sample.setHeartRate(heartRate);
+                samples.add(sample);
             }
+            bulkInsertHealthData("test", samples.stream(), DEFAULT_COMMIT_INTERVAL);
         } catch (SQLException e) {
             System.err.println("Error creating default data: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
-    public void closeConnection() {
+    // Upserts readings with one reused statement, committing every commitInterval rows.
+    // Unset values (non-positive weight, BMI or heart rate, negative steps, no blood pressure)
+    // keep whatever is already stored for that day, including readings already moved to the archive.
+    public BulkInsertResult bulkInsertHealthData(String username, Stream<HealthData> records, int commitInterval)
+            throws SQLException {
+        String sql = "INSERT INTO health_data (username, date, weight, bmi, steps, systolic, diastolic, heart_rate) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
+                "ON CONFLICT(username, date) DO UPDATE SET " +
+                "weight = COALESCE(excluded.weight, weight), " +
+                "bmi = COALESCE(excluded.bmi, bmi), " +
+                "steps = COALESCE(excluded.steps, steps), " +
+                "systolic = COALESCE(excluded.systolic, systolic), " +
+                "diastolic = COALESCE(excluded.diastolic, diastolic), " +
+                "heart_rate = COALESCE(excluded.heart_rate, heart_rate)";
+        int interval = Math.max(1, commitInterval);
+        long start = System.nanoTime();
+        long rowsWritten = 0;
+        int commits = 0;
+        int pending = 0;
+        // Day range written since the last commit; its rollup buckets are refreshed in the same transaction
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
         try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
+            PreparedStatement pstmt = prepare(sql);
+            Iterator<HealthData> iterator = records.iterator();
+            while (iterator.hasNext()) {
+                HealthData data = iterator.next();
+                int day = EpochDays.of(data.getDate());
+                minDay = Math.min(minDay, day);
+                maxDay = Math.max(maxDay, day);
+                copyArchivedDay(username, day);
+                pstmt.setString(1, username);
+                pstmt.setInt(2, day);
+                setNullable(pstmt, 3, data.getWeight() > 0 ? data.getWeight() : null, Types.REAL);
+                setNullable(pstmt, 4, data.getBmi() > 0 ? data.getBmi() : null, Types.REAL);
+                setNullable(pstmt, 5, data.getSteps() >= 0 ? data.getSteps() : null, Types.INTEGER);
+                setNullable(pstmt, 6, data.hasBloodPressure() ? data.getSystolic() : null, Types.INTEGER);
+                setNullable(pstmt, 7, data.hasBloodPressure() ? data.getDiastolic() : null, Types.INTEGER);
+                setNullable(pstmt, 8, data.getHeartRate() > 0 ? data.getHeartRate() : null, Types.INTEGER);
+                pstmt.addBatch();
+
+                if (++pending == interval) {
+                    pstmt.executeBatch();
+                    HealthRollups.refresh(connection, username, minDay, maxDay);
+                    connection.commit();
+                    rowsWritten += pending;
+                    commits++;
+                    pending = 0;
+                    minDay = Integer.MAX_VALUE;
+                    maxDay = Integer.MIN_VALUE;
+                }
+            }
+            if (pending > 0) {
+                pstmt.executeBatch();
+                HealthRollups.refresh(connection, username, minDay, maxDay);
+                connection.commit();
+                rowsWritten += pending;
+                commits++;
             }
+        } catch (SQLException e) {
+            connection.rollback();
+            System.err.println("Error in bulk insert after " + rowsWritten + " rows: " + e.getMessage());
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+            // Earlier batches may have committed even on failure, so the in-memory series is reloaded either way
+            HealthSeriesStore.invalidate(username);
+        }
+        return new BulkInsertResult(rowsWritten, commits, System.nanoTime() - start);
+    }
+
+    // The live row of a day replaces its archived record as a whole, so before a partial upsert touches an
+    // archived day its archived readings are copied into health_data for the upsert to merge into
+    private void copyArchivedDay(String username, int day) throws SQLException {
+        HealthArchive.Cursor archived = HealthArchive.cursor(username, day, day);
+        if (!archived.next()) {
+            return;
+        }
+        String sql = "INSERT INTO health_data (username, date, weight, bmi, steps, systolic, diastolic, heart_rate) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT(username, date) DO NOTHING";
+        PreparedStatement pstmt = prepare(sql);
+        pstmt.setString(1, username);
+        pstmt.setInt(2, day);
+        setNullable(pstmt, 3, Double.isNaN(archived.weight()) ? null : archived.weight(), Types.REAL);
+        setNullable(pstmt, 4, Double.isNaN(archived.bmi()) ? null : archived.bmi(), Types.REAL);
+        setNullable(pstmt, 5, archivedInt(archived.steps()), Types.INTEGER);
+        setNullable(pstmt, 6, archivedInt(archived.systolic()), Types.INTEGER);
+        setNullable(pstmt, 7, archivedInt(archived.diastolic()), Types.INTEGER);
+        setNullable(pstmt, 8, archivedInt(archived.heartRate()), Types.INTEGER);
+        pstmt.executeUpdate();
+    }
+
+    private static Integer archivedInt(int value) {
+        return value == HealthSeriesStore.MISSING ? null : value;
+    }
+
+    private static void setNullable(PreparedStatement pstmt, int index, Object value, int sqlType)
+            throws SQLException {
+        if (value == null) {
+            pstmt.setNull(index, sqlType);
+        } else {
+            pstmt.setObject(index, value, sqlType);
+        }
+    }
+
+    // Returns the connection to the shared pool instead of closing it
+    public void closeConnection() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            ConnectionPool.getInstance().release(connection);
         } catch (SQLException e) {
             System.err.println("Error closing connection: " + e.getMessage());
         }
+        connection = null;
+    }
+
+    /**
+     * 登入驗證結果，讓呼叫端能分辨帳號不存在與密碼錯誤 (例如用於節流與快取)；
+     * 畫面上兩者仍應顯示相同訊息
+     */
+    public enum LoginResult {
+        SUCCESS, INVALID_PASSWORD, UNKNOWN_USER
     }
 
-    public boolean validateLogin(String username, String password) {
+    public boolean validateLogin(String username, String password) throws SQLException {
+        return authenticate(username, password.toCharArray()) == LoginResult.SUCCESS;
+    }
+
+    public boolean validateLogin(String username, char[] password) throws SQLException {
+        return authenticate(username, password) == LoginResult.SUCCESS;
+    }
+
+    // Takes the password as characters so callers can wipe it once the login has been checked
+    public LoginResult authenticate(String username, char[] password) throws SQLException {
         String sql = "SELECT password, salt FROM users WHERE username = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, username);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                String storedPassword = rs.getString("password");
-                String salt = rs.getString("salt");
-                return PasswordSecurity.verifyPassword(password, storedPassword, salt);
+        PreparedStatement pstmt = prepare(sql);
+        pstmt.setString(1, username);
+        String storedPassword;
+        String salt;
+        try (ResultSet rs = pstmt.executeQuery()) {
+            if (!rs.next()) {
+                // Costs a full hash too, so the response time does not reveal whether the account exists
+                PasswordSecurity.verifyDummyPassword(password);
+                return LoginResult.UNKNOWN_USER;
             }
+            storedPassword = rs.getString("password");
+            salt = rs.getString("salt");
+        }
+        if (!PasswordSecurity.verifyPassword(password, storedPassword, salt)) {
+            return LoginResult.INVALID_PASSWORD;
+        }
+        // The plaintext is only available here, so old or cheaper hashes are upgraded on a successful login
+        if (PasswordSecurity.needsRehash(storedPassword)) {
+            rehashPassword(username, password);
+        }
+        return LoginResult.SUCCESS;
+    }
+
+    private void rehashPassword(String username, char[] password) {
+        String salt = PasswordSecurity.generateSalt();
+        String hashedPassword = PasswordSecurity.hashPassword(password, salt);
+        String sql = "UPDATE users SET password = ?, salt = ? WHERE username = ?";
+        try {
+            PreparedStatement pstmt = prepare(sql);
+            pstmt.setString(1, hashedPassword);
+            pstmt.setString(2, salt);
+            pstmt.setString(3, username);
+            pstmt.executeUpdate();
         } catch (SQLException e) {
-            e.printStackTrace();
+            // The login itself succeeded; the upgrade is retried next time
+            System.err.println("Error upgrading password hash for " + username + ": " + e.getMessage());
         }
-        return false;
     }
 
     // Insert username and password with salt
@@ -182,11 +296,14 @@ public class DatabaseManager {
         String salt = PasswordSecurity.generateSalt();
         String hashedPassword = PasswordSecurity.hashPassword(password, salt);
         String sql = "INSERT INTO users (username, password, salt) VALUES (?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try {
+            PreparedStatement pstmt = prepare(sql);
             pstmt.setString(1, username);
             pstmt.setString(2, hashedPassword);
             pstmt.setString(3, salt);
             pstmt.executeUpdate();
+            // A failed login just before sign-up must not hide the new account
+            LoginThrottle.forgetUnknownUser(username);
             return true;
         } catch (SQLException e) {
             System.err.println("Error inserting user: " + e.getMessage());
@@ -194,132 +311,108 @@ public class DatabaseManager {
         }
     }
 
-    public ResultSet getHealthData(String username, String metric, String timeRange) throws SQLException {
-        String columnName;
+    /**
+     * 讀取某個指標在時間範圍內的週或月彙總，依區間與欄位排序；血壓每個區間有收縮壓與舒張壓兩列
+     * 欄位為 bucket_start, metric, count, min_value, max_value, sum_value, sum_squares
+     */
+    public ResultSet getRollupData(String username, String metric, HealthRollups.Granularity granularity,
+            String timeRange) throws SQLException {
+        int endDay = EpochDays.today();
+        return HealthRollups.query(connection, username, metricColumns(metric), granularity,
+                getRangeStart(timeRange, endDay), endDay);
+    }
+
+    // Maps a metric name shown in the UI to its health_data columns; blood pressure has two
+    static String[] metricColumns(String metric) {
         switch (metric.toLowerCase()) {
-            case "weight":
-                columnName = "weight";
-                break;
             case "bmi":
-                columnName = "bmi";
-                break;
+                return new String[] { "bmi" };
             case "steps":
-                columnName = "steps";
-                break;
+                return new String[] { "steps" };
             case "blood pressure":
-                columnName = "blood_pressure";
-                break;
+                return new String[] { "systolic", "diastolic" };
             case "heart rate":
-                columnName = "heart_rate";
-                break;
+                return new String[] { "heart_rate" };
             default:
-                columnName = "weight";
-                break;
+                return new String[] { "weight" };
         }
+    }
 
-        // Get current date in MM/dd/yyyy format
-        SimpleDateFormat outputFormat = new SimpleDateFormat("yyyy-MM-dd");
-        Calendar cal = Calendar.getInstance();
-        String endDate = outputFormat.format(cal.getTime());
-
-        // Calculate start date
+    // First epoch day included in a "Last ..." time range ending at endDay
+    public static int getRangeStart(String timeRange, int endDay) {
+        LocalDate end = EpochDays.toLocalDate(endDay);
         switch (timeRange) {
             case "Last Week":
-                cal.add(Calendar.DAY_OF_MONTH, -7);
-                break;
+                return EpochDays.of(end.minusWeeks(1));
             case "Last Month":
-                cal.add(Calendar.MONTH, -1);
-                break;
+                return EpochDays.of(end.minusMonths(1));
             case "Last 3 Months":
-                cal.add(Calendar.MONTH, -3);
-                break;
+                return EpochDays.of(end.minusMonths(3));
             case "Last Year":
-                cal.add(Calendar.YEAR, -1);
-                break;
+                return EpochDays.of(end.minusYears(1));
+            case "All Time":
+                return Integer.MIN_VALUE;
             default:
-                cal.add(Calendar.DAY_OF_MONTH, -7);
+                return EpochDays.of(end.minusWeeks(1));
         }
-        String startDate = outputFormat.format(cal.getTime());
-
-        // Simple query since dates are stored in MM/dd/yyyy format
-        String sql = "SELECT date, " + columnName + " FROM health_data " +
-                "WHERE username = ? " +
-                "AND date >= ? " +
-                "AND date <= ? " +
-                "ORDER BY date ASC";
-
-        System.out.println("Query dates: Start=" + startDate + ", End=" + endDate);
-        PreparedStatement pstmt = connection.prepareStatement(sql);
-        pstmt.setString(1, username);
-        pstmt.setString(2, startDate);
-        pstmt.setString(3, endDate);
-
-        return pstmt.executeQuery();
     }
 
-    public ResultSet getComparisonData(String username, String metric, int daysOffset) throws SQLException {
-        String columnName;
-        switch (metric.toLowerCase()) {
-            case "weight":
-                columnName = "weight";
-                break;
-            case "bmi":
-                columnName = "bmi";
-                break;
-            case "steps":
-                columnName = "steps";
-                break;
-            case "blood pressure":
-                columnName = "blood_pressure";
-                break;
-            case "heart rate":
-                columnName = "heart_rate";
-                break;
-            default:
-                columnName = "weight";
-                break;
-        }
-
-        // Get data from previous period
-        String sql = "SELECT date, " + columnName + " FROM health_data " +
-                "WHERE username = ? AND " +
-                "date >= date('now', '-" + (daysOffset * 2) + " days') AND " +
-                "date < date('now', '-" + daysOffset + " days') " +
-                "ORDER BY date ASC";
+    /**
+     * 讀取目前期間與前一個同長度期間的週或月彙總，一次查詢涵蓋兩段，由呼叫端在 getRangeStart 處切開
+     * 欄位與 getRollupData 相同；沒有起點的範圍 (All Time) 沒有前一期間，只回傳目前期間
+     */
+    public ResultSet getComparisonData(String username, String metric, HealthRollups.Granularity granularity,
+            String timeRange) throws SQLException {
+        int endDay = EpochDays.today();
+        return HealthRollups.query(connection, username, metricColumns(metric), granularity,
+                getPreviousRangeStart(timeRange, endDay), endDay);
+    }
 
-        PreparedStatement pstmt = connection.prepareStatement(sql);
-        pstmt.setString(1, username);
-        return pstmt.executeQuery();
+    // Start of the period of the same length just before getRangeStart; Integer.MIN_VALUE for "All Time"
+    public static int getPreviousRangeStart(String timeRange, int endDay) {
+        int startDay = getRangeStart(timeRange, endDay);
+        return startDay == Integer.MIN_VALUE ? startDay : getRangeStart(timeRange, startDay);
     }
 
+    // Served from the session cache; only the first call for a user reaches the database
     public double getTargetValue(String username, String metric) throws SQLException {
-        String sql = "SELECT target_weight FROM users WHERE username = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, username);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return rs.getDouble("target_weight");
-            }
-        }
-        return 0.0;
+        User user = getUser(username);
+        return user != null ? user.getProfile().getTargetWeight() : 0.0;
     }
 
     // Check username uniqueness
     public boolean checkUsernameExists(String username) throws SQLException {
         String sql = "SELECT username FROM users WHERE username = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, username);
-            ResultSet rs = pstmt.executeQuery();
+        PreparedStatement pstmt = prepare(sql);
+        pstmt.setString(1, username);
+        try (ResultSet rs = pstmt.executeQuery()) {
             return rs.next();
         }
     }
 
+    // Read-through: the session cache is consulted first and filled on a miss
     public User getUser(String username) {
-        String sql = "SELECT * FROM users WHERE username = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        User cached = SessionCache.getUser(username);
+        if (cached != null) {
+            return cached;
+        }
+        User loaded = loadUser(username);
+        SessionCache.putUser(loaded);
+        return loaded;
+    }
+
+    // Profile and goals come back in one query; a user without a goals row keeps the profile target weight
+    private User loadUser(String username) {
+        String sql = "SELECT u.name, u.age, u.gender, u.height, u.target_weight, " +
+                "g.target_weight AS goal_weight, g.target_steps, g.target_water_intake, g.target_sleep_hours " +
+                "FROM users u LEFT JOIN health_goals g ON g.username = u.username WHERE u.username = ?";
+        try {
+            PreparedStatement pstmt = prepare(sql);
             pstmt.setString(1, username);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
                 User user = new User(username, "");
                 ProfileData profile = new ProfileData();
                 profile.setName(rs.getString("name"));
@@ -328,6 +421,14 @@ public class DatabaseManager {
                 profile.setHeight(rs.getDouble("height"));
                 profile.setTargetWeight(rs.getDouble("target_weight"));
                 user.setProfile(profile);
+
+                HealthGoals goals = new HealthGoals();
+                double goalWeight = rs.getDouble("goal_weight");
+                goals.setTargetWeight(rs.wasNull() ? profile.getTargetWeight() : goalWeight);
+                goals.setTargetSteps(rs.getInt("target_steps"));
+                goals.setTargetWaterIntake(rs.getInt("target_water_intake"));
+                goals.setTargetSleepHours(rs.getInt("target_sleep_hours"));
+                user.setGoals(goals);
                 return user;
             }
         } catch (SQLException e) {
@@ -336,26 +437,72 @@ public class DatabaseManager {
         return null;
     }
 
+    /**
+     * 更新個人資料並讓快取失效
+     *
+     * @return 找不到使用者時回傳 false
+     */
+    public boolean updateProfile(String username, ProfileData profile) throws SQLException {
+        String sql = "UPDATE users SET name = ?, age = ?, gender = ?, height = ?, target_weight = ? WHERE username = ?";
+        PreparedStatement pstmt = prepare(sql);
+        pstmt.setString(1, profile.getName());
+        pstmt.setInt(2, profile.getAge());
+        pstmt.setString(3, profile.getGender());
+        pstmt.setDouble(4, profile.getHeight());
+        pstmt.setDouble(5, profile.getTargetWeight());
+        pstmt.setString(6, username);
+        try {
+            return pstmt.executeUpdate() > 0;
+        } finally {
+            SessionCache.invalidate(username);
+        }
+    }
+
+    /**
+     * 取得健康目標，找不到使用者時回傳 null
+     */
+    public HealthGoals getHealthGoals(String username) {
+        User user = getUser(username);
+        return user != null ? user.getGoals() : null;
+    }
+
+    /**
+     * 儲存健康目標並讓快取失效
+     */
+    public void saveHealthGoals(String username, HealthGoals goals) throws SQLException {
+        String sql = "INSERT INTO health_goals (username, target_weight, target_steps, target_water_intake, " +
+                "target_sleep_hours) VALUES (?, ?, ?, ?, ?) " +
+                "ON CONFLICT(username) DO UPDATE SET target_weight = excluded.target_weight, " +
+                "target_steps = excluded.target_steps, target_water_intake = excluded.target_water_intake, " +
+                "target_sleep_hours = excluded.target_sleep_hours";
+        PreparedStatement pstmt = prepare(sql);
+        pstmt.setString(1, username);
+        pstmt.setDouble(2, goals.getTargetWeight());
+        pstmt.setInt(3, goals.getTargetSteps());
+        pstmt.setInt(4, goals.getTargetWaterIntake());
+        pstmt.setInt(5, goals.getTargetSleepHours());
+        try {
+            pstmt.executeUpdate();
+        } finally {
+            SessionCache.invalidate(username);
+        }
+    }
+
     // Inserts a new daily habit record into the database
     public boolean insertDailyHabit(String username, String date, int waterIntake, String diet, int sleepHours)
             throws SQLException {
         try {
-            // Convert MM/dd/yyyy to yyyy-MM-dd
-            SimpleDateFormat inputFormat = new SimpleDateFormat("MM/dd/yyyy");
-            SimpleDateFormat outputFormat = new SimpleDateFormat("yyyy-MM-dd");
-            Date parsedDate = inputFormat.parse(date);
-            String formattedDate = outputFormat.format(parsedDate);
+            int epochDay = EpochDays.fromDisplay(date);
 
             String sql = "INSERT INTO daily_habits (username, date, water_intake, diet, sleep_hours) VALUES (?, ?, ?, ?, ?)";
-            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                pstmt.setString(1, username);
-                pstmt.setString(2, formattedDate);
-                pstmt.setInt(3, waterIntake);
-                pstmt.setString(4, diet);
-                pstmt.setInt(5, sleepHours);
-                pstmt.executeUpdate();
-                return true;
-            }
+            PreparedStatement pstmt = prepare(sql);
+            pstmt.setString(1, username);
+            pstmt.setInt(2, epochDay);
+            pstmt.setInt(3, waterIntake);
+            pstmt.setString(4, diet);
+            pstmt.setInt(5, sleepHours);
+            pstmt.executeUpdate();
+            return true;
         } catch (ParseException e) {
             System.err.println("Error parsing date: " + e.getMessage());
             throw new SQLException("Invalid date format. Expected MM/dd/yyyy");
@@ -367,60 +514,229 @@ public class DatabaseManager {
 
     // Checks if a daily habit record exists for the given username and date
     public boolean checkDailyHabitExists(String username, String date) throws SQLException, ParseException {
-        SimpleDateFormat inputFormat = new SimpleDateFormat("MM/dd/yyyy");
-        SimpleDateFormat outputFormat = new SimpleDateFormat("yyyy-MM-dd");
-        Date parsedDate = inputFormat.parse(date);
-        String formattedDate = outputFormat.format(parsedDate);
-        String sql = "SELECT 1 FROM daily_habits WHERE username = ? AND date = date(?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, username);
-            pstmt.setString(2, formattedDate);
-            ResultSet rs = pstmt.executeQuery();
+        int epochDay = EpochDays.fromDisplay(date);
+        String sql = "SELECT 1 FROM daily_habits WHERE username = ? AND date = ?";
+        PreparedStatement pstmt = prepare(sql);
+        pstmt.setString(1, username);
+        pstmt.setInt(2, epochDay);
+        try (ResultSet rs = pstmt.executeQuery()) {
             return rs.next();
         }
     }
 
-    public boolean checkHealthDataExists(String username, String date) throws SQLException, ParseException {
-        SimpleDateFormat inputFormat = new SimpleDateFormat("MM/dd/yyyy");
-        SimpleDateFormat outputFormat = new SimpleDateFormat("yyyy-MM-dd");
-        Date parsedDate = inputFormat.parse(date);
-        String formattedDate = outputFormat.format(parsedDate);
-        String sql = "SELECT 1 FROM health_data WHERE username = ? AND date = date(?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+    // Returns the days of the month that have a record, as bits (day 1 = bit 0), in one range query.
+    // type is "HealthData" or "DailyHabit", matching CalendarPopup.
+    public BitSet getMonthOccupancy(String username, String type, YearMonth month) throws SQLException {
+        String table = "DailyHabit".equals(type) ? "daily_habits" : "health_data";
+        String sql = "SELECT date FROM " + table + " WHERE username = ? AND date >= ? AND date <= ?";
+        int firstDay = EpochDays.of(month.atDay(1));
+        int lastDay = EpochDays.of(month.atEndOfMonth());
+        PreparedStatement pstmt = prepare(sql);
+        pstmt.setString(1, username);
+        pstmt.setInt(2, firstDay);
+        pstmt.setInt(3, lastDay);
+
+        BitSet days = new BitSet(month.lengthOfMonth());
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                days.set(rs.getInt(1) - firstDay);
+            }
+        }
+        if (!"DailyHabit".equals(type)) {
+            HealthArchive.Cursor archived = HealthArchive.cursor(username, firstDay, lastDay);
+            while (archived.next()) {
+                days.set(archived.day() - firstDay);
+            }
+        }
+        return days;
+    }
+
+    public int countReadingsBefore(String username, int beforeDay) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM health_data WHERE username = ? AND date < ?";
+        PreparedStatement pstmt = prepare(sql);
+        pstmt.setString(1, username);
+        pstmt.setInt(2, beforeDay);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    // Moves a user's readings before beforeDay into a new archive segment. The rows are deleted and
+    // returned by one statement, and the deletion commits only once the segment is safely on disk;
+    // a crash in between leaves the rows in both places, where the database copy wins.
+    public int archiveReadings(String username, int beforeDay) throws SQLException {
+        String sql = "DELETE FROM health_data WHERE username = ? AND date < ? " +
+                "RETURNING date, weight, bmi, steps, systolic, diastolic, heart_rate";
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            PreparedStatement pstmt = prepare(sql);
             pstmt.setString(1, username);
-            pstmt.setString(2, formattedDate);
-            ResultSet rs = pstmt.executeQuery();
-            return rs.next();
+            pstmt.setInt(2, beforeDay);
+            int archived;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                archived = HealthArchive.writeSegment(username, rs);
+            }
+            connection.commit();
+            // The readings only moved, so the series store and the rollups stay valid
+            return archived;
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } catch (IOException e) {
+            connection.rollback();
+            throw new SQLException("Error writing archive segment: " + e.getMessage(), e);
+        } finally {
+            connection.setAutoCommit(autoCommit);
         }
     }
 
+    // Every reading of one user in date order, in the column order HealthSeriesStore reads
+    public ResultSet getSeriesRows(String username) throws SQLException {
+        String sql = "SELECT date, weight, bmi, steps, systolic, diastolic, heart_rate FROM health_data " +
+                "WHERE username = ? ORDER BY date ASC";
+        PreparedStatement pstmt = prepare(sql);
+        pstmt.setString(1, username);
+        return query(pstmt);
+    }
+
+    // Readings of one user from fromDay on, in the same columns and order as getSeriesRows
+    public ResultSet getSeriesRows(String username, int fromDay) throws SQLException {
+        String sql = "SELECT date, weight, bmi, steps, systolic, diastolic, heart_rate FROM health_data " +
+                "WHERE username = ? AND date >= ? ORDER BY date ASC";
+        PreparedStatement pstmt = prepare(sql);
+        pstmt.setString(1, username);
+        pstmt.setInt(2, fromDay);
+        return query(pstmt);
+    }
+
+    // Every user with the goals the reports check: username, target_weight, target_steps (null without goals).
+    // The weight target falls back to the profile's, as in getUser.
+    public ResultSet getReportUsers() throws SQLException {
+        String sql = "SELECT u.username, COALESCE(g.target_weight, u.target_weight) AS target_weight, " +
+                "g.target_steps FROM users u LEFT JOIN health_goals g ON g.username = u.username " +
+                "ORDER BY u.username";
+        return query(prepare(sql));
+    }
+
+    // Every reading and habit of one user in [fromDay, toDay], one row per day, in date order.
+    // Columns follow HealthDataExporter.COLUMNS: days with only readings or only habits have nulls for the rest.
+    public ResultSet getExportRows(String username, int fromDay, int toDay) throws SQLException {
+        String sql = "SELECT COALESCE(h.date, d.date) AS day, h.weight, h.bmi, h.steps, h.systolic, h.diastolic, " +
+                "h.heart_rate, d.water_intake, d.sleep_hours, d.diet " +
+                "FROM (SELECT date, weight, bmi, steps, systolic, diastolic, heart_rate FROM health_data " +
+                "WHERE username = ? AND date BETWEEN ? AND ?) h " +
+                "FULL OUTER JOIN (SELECT date, water_intake, sleep_hours, diet FROM daily_habits " +
+                "WHERE username = ? AND date BETWEEN ? AND ?) d ON d.date = h.date " +
+                "ORDER BY day ASC";
+        PreparedStatement pstmt = prepare(sql);
+        bindUserRange(pstmt, 1, username, fromDay, toDay);
+        bindUserRange(pstmt, 4, username, fromDay, toDay);
+        return query(pstmt);
+    }
+
+    // Number of rows getExportRows returns for the same arguments, read from the indexes only
+    public long countExportRows(String username, int fromDay, int toDay) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM (" +
+                "SELECT date FROM health_data WHERE username = ? AND date BETWEEN ? AND ? " +
+                "UNION SELECT date FROM daily_habits WHERE username = ? AND date BETWEEN ? AND ?)";
+        PreparedStatement pstmt = prepare(sql);
+        bindUserRange(pstmt, 1, username, fromDay, toDay);
+        bindUserRange(pstmt, 4, username, fromDay, toDay);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static void bindUserRange(PreparedStatement pstmt, int index, String username, int fromDay, int toDay)
+            throws SQLException {
+        pstmt.setString(index, username);
+        pstmt.setInt(index + 1, fromDay);
+        pstmt.setInt(index + 2, toDay);
+    }
+
+    // Retrieves the health data record for the given username and date, or null if there is none
+    public HealthData getHealthDataForDate(String username, String date) throws SQLException, ParseException {
+        int epochDay = EpochDays.fromDisplay(date);
+        String sql = "SELECT weight, bmi, steps, systolic, diastolic, heart_rate FROM health_data " +
+                "WHERE username = ? AND date = ?";
+        PreparedStatement pstmt = prepare(sql);
+        pstmt.setString(1, username);
+        pstmt.setInt(2, epochDay);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            if (!rs.next()) {
+                // Old days may have been moved to the archive
+                HealthArchive.Cursor archived = HealthArchive.cursor(username, epochDay, epochDay);
+                return archived.next() ? archived.toHealthData() : null;
+            }
+            HealthData data = new HealthData();
+            data.setDate(EpochDays.toLocalDate(epochDay));
+            data.setWeight(rs.getDouble("weight"));
+            data.setBmi(rs.getDouble("bmi"));
+            data.setSteps(rs.getInt("steps"));
+            data.setSystolic(rs.getInt("systolic"));
+            data.setDiastolic(rs.getInt("diastolic"));
+            data.setHeartRate(rs.getInt("heart_rate"));
+            return data;
+        }
+    }
+
+    // Inserts or replaces the health data record for the record's date
+    public void saveHealthData(String username, HealthData data) throws SQLException {
+        String sql = "INSERT INTO health_data (username, date, weight, bmi, steps, systolic, diastolic, heart_rate) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
+                "ON CONFLICT(username, date) DO UPDATE SET " +
+                "weight = excluded.weight, bmi = excluded.bmi, steps = excluded.steps, " +
+                "systolic = excluded.systolic, diastolic = excluded.diastolic, heart_rate = excluded.heart_rate";
+        int day = EpochDays.of(data.getDate());
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            PreparedStatement pstmt = prepare(sql);
+            pstmt.setString(1, username);
+            pstmt.setInt(2, day);
+            pstmt.setDouble(3, data.getWeight());
+            // No BMI without a known height; it is stored as null rather than 0
+            setNullable(pstmt, 4, data.getBmi() > 0 ? data.getBmi() : null, Types.REAL);
+            pstmt.setInt(5, data.getSteps());
+            setNullable(pstmt, 6, data.hasBloodPressure() ? data.getSystolic() : null, Types.INTEGER);
+            setNullable(pstmt, 7, data.hasBloodPressure() ? data.getDiastolic() : null, Types.INTEGER);
+            pstmt.setInt(8, data.getHeartRate());
+            pstmt.executeUpdate();
+            // The day's week and month rollups are recomputed in the same transaction
+            HealthRollups.refresh(connection, username, day, day);
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        HealthSeriesStore.recordWrite(username, day, data);
+    }
+
     // Retrieves the daily habit record for the given username and date
     public ResultSet getDailyHabit(String username, String date) throws SQLException, ParseException {
-        SimpleDateFormat inputFormat = new SimpleDateFormat("MM/dd/yyyy");
-        SimpleDateFormat outputFormat = new SimpleDateFormat("yyyy-MM-dd");
-        Date parsedDate = inputFormat.parse(date);
-        String formattedDate = outputFormat.format(parsedDate);
-        String sql = "SELECT * FROM daily_habits WHERE username = ? AND date = date(?)";
-        PreparedStatement pstmt = connection.prepareStatement(sql);
+        int epochDay = EpochDays.fromDisplay(date);
+        String sql = "SELECT * FROM daily_habits WHERE username = ? AND date = ?";
+        PreparedStatement pstmt = prepare(sql);
         pstmt.setString(1, username);
-        pstmt.setString(2, formattedDate);
-        return pstmt.executeQuery();
+        pstmt.setInt(2, epochDay);
+        return query(pstmt);
     }
 
     // Updates an existing daily habit record in the database
     public boolean updateDailyHabit(String username, String date, int waterIntake, String diet, int sleepHours)
             throws SQLException, ParseException {
-        SimpleDateFormat inputFormat = new SimpleDateFormat("MM/dd/yyyy");
-        SimpleDateFormat outputFormat = new SimpleDateFormat("yyyy-MM-dd");
-        Date parsedDate = inputFormat.parse(date);
-        String formattedDate = outputFormat.format(parsedDate);
-        String sql = "UPDATE daily_habits SET water_intake = ?, diet = ?, sleep_hours = ? WHERE username = ? AND date = date(?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        int epochDay = EpochDays.fromDisplay(date);
+        String sql = "UPDATE daily_habits SET water_intake = ?, diet = ?, sleep_hours = ? WHERE username = ? AND date = ?";
+        try {
+            PreparedStatement pstmt = prepare(sql);
             pstmt.setInt(1, waterIntake);
             pstmt.setString(2, diet);
             pstmt.setInt(3, sleepHours);
             pstmt.setString(4, username);
-            pstmt.setString(5, formattedDate);
+            pstmt.setInt(5, epochDay);
 
             int rowsUpdated = pstmt.executeUpdate();
             return rowsUpdated > 0;
@@ -430,4 +746,38 @@ public class DatabaseManager {
         }
     }
 
-}
\ No newline at end of file
+    // Outcome of bulkInsertHealthData; rows before a failure stay committed
+    public static class BulkInsertResult {
+        private final long rowsWritten;
+        private final int commits;
+        private final long elapsedNanos;
+
+        public BulkInsertResult(long rowsWritten, int commits, long elapsedNanos) {
+            this.rowsWritten = rowsWritten;
+            this.commits = commits;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getRowsWritten() {
+            return rowsWritten;
+        }
+
+        public int getCommits() {
+            return commits;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos > 0 ? rowsWritten * 1_000_000_000.0 / elapsedNanos : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d rows in %d commits, %d ms (%.0f rows/s)",
+                    rowsWritten, commits, getElapsedMillis(), getRowsPerSecond());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.healthbuddy;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * SQLite 效能與耐久性設定檔
+ * 透過系統屬性 healthbuddy.db.profile 選擇 (durable / balanced / fast)，
+ * 個別參數可再用 healthbuddy.db.mmapSize、cacheSize、busyTimeoutMs 覆寫
+ */
+public enum DatabaseProfile {
+    // Rollback journal with a full fsync on every commit, the driver's historical behaviour
+    DURABLE("DELETE", "FULL"),
+    // WAL lets readers run alongside a writer; NORMAL only fsyncs at checkpoints
+    BALANCED("WAL", "NORMAL"),
+    // WAL without fsync; a power loss can drop the latest commits
+    FAST("WAL", "OFF");
+
+    private static final long MMAP_SIZE = Long.getLong("healthbuddy.db.mmapSize", 64L * 1024 * 1024);
+    // Negative values are in KiB, as defined by PRAGMA cache_size
+    private static final int CACHE_SIZE = Integer.getInteger("healthbuddy.db.cacheSize", -16000);
+    private static final int BUSY_TIMEOUT_MS = Integer.getInteger("healthbuddy.db.busyTimeoutMs", 5000);
+
+    private static final String[] REPORTED_PRAGMAS = {
+            "journal_mode", "synchronous", "mmap_size", "cache_size", "temp_store", "busy_timeout"
+    };
+
+    private final String journalMode;
+    private final String synchronous;
+
+    DatabaseProfile(String journalMode, String synchronous) {
+        this.journalMode = journalMode;
+        this.synchronous = synchronous;
+    }
+
+    /**
+     * 讀取系統屬性決定的設定檔，未設定或無法辨識時使用 BALANCED
+     */
+    public static DatabaseProfile active() {
+        String name = System.getProperty("healthbuddy.db.profile", BALANCED.name());
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown database profile '" + name + "', using " + BALANCED);
+            return BALANCED;
+        }
+    }
+
+    /**
+     * 將設定套用到新開啟的連線
+     */
+    public void apply(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            // busy_timeout first so the journal mode switch can wait out a concurrent writer
+            stmt.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MS);
+            stmt.execute("PRAGMA journal_mode = " + journalMode);
+            stmt.execute("PRAGMA synchronous = " + synchronous);
+            stmt.execute("PRAGMA mmap_size = " + MMAP_SIZE);
+            stmt.execute("PRAGMA cache_size = " + CACHE_SIZE);
+            stmt.execute("PRAGMA temp_store = MEMORY");
+        }
+    }
+
+    /**
+     * 讀回連線實際生效的設定，用於啟動時的記錄
+     */
+    public String describe(Connection connection) throws SQLException {
+        StringBuilder sb = new StringBuilder("Database profile ").append(name()).append(':');
+        try (Statement stmt = connection.createStatement()) {
+            for (String pragma : REPORTED_PRAGMAS) {
+                try (ResultSet rs = stmt.executeQuery("PRAGMA " + pragma)) {
+                    sb.append(' ').append(pragma).append('=').append(rs.next() ? rs.getString(1) : "?");
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,157 @@
+package com.healthbuddy;
+
+/**
+ * 時間序列降採樣類別
+ * 將長時間範圍的資料點減少到圖表能清楚呈現的數量，保留整體形狀與極值；
+ * 回傳被選中點的索引，呼叫端可用同一組索引取出日期與數值
+ */
+public final class Downsampler {
+
+    public enum Mode {
+        // Largest-Triangle-Three-Buckets: keeps the visual shape of a line
+        LTTB,
+        // Minimum and maximum of every bucket: keeps every spike, at two points per bucket
+        MIN_MAX;
+
+        /**
+         * 依名稱取得模式，無法辨識時使用 LTTB
+         */
+        public static Mode fromName(String name) {
+            return "minmax".equalsIgnoreCase(name) || "min_max".equalsIgnoreCase(name) ? MIN_MAX : LTTB;
+        }
+    }
+
+    private Downsampler() {
+    }
+
+    /**
+     * 依模式降採樣；資料點不超過 threshold 時回傳所有索引
+     *
+     * @param x     遞增排序的橫軸值
+     * @param y     對應的數值
+     * @param count 陣列中實際使用的長度
+     */
+    public static int[] downsample(Mode mode, double[] x, double[] y, int count, int threshold) {
+        return downsample(mode, x, y, 0, count, threshold);
+    }
+
+    /**
+     * 只降採樣 [from, to) 這一段，例如圖表放大後的可見範圍；回傳的索引仍以整個陣列為準
+     */
+    public static int[] downsample(Mode mode, double[] x, double[] y, int from, int to, int threshold) {
+        return mode == Mode.MIN_MAX ? minMax(x, y, from, to, Math.max(1, threshold / 2))
+                : lttb(x, y, from, to, threshold);
+    }
+
+    public static int[] lttb(double[] x, double[] y, int count, int threshold) {
+        return lttb(x, y, 0, count, threshold);
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets 演算法，保留第一與最後一點，中間每個區間選一點
+     */
+    public static int[] lttb(double[] x, double[] y, int from, int to, int threshold) {
+        int count = to - from;
+        if (threshold >= count || threshold < 3) {
+            return identity(from, to);
+        }
+
+        int[] selected = new int[threshold];
+        int selectedCount = 0;
+        selected[selectedCount++] = from;
+
+        // Buckets cover the points strictly between the first and the last one
+        double bucketSize = (double) (count - 2) / (threshold - 2);
+        int a = from;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int start = from + (int) Math.floor(bucket * bucketSize) + 1;
+            int end = from + Math.min((int) Math.floor((bucket + 1) * bucketSize) + 1, count - 1);
+
+            // The third triangle vertex is the average of the next bucket (or the last point)
+            int nextStart = end;
+            int nextEnd = from + Math.min((int) Math.floor((bucket + 2) * bucketSize) + 1, count);
+            double avgX = 0;
+            double avgY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                avgX += x[i];
+                avgY += y[i];
+            }
+            int nextLength = nextEnd - nextStart;
+            avgX /= nextLength;
+            avgY /= nextLength;
+
+            double ax = x[a];
+            double ay = y[a];
+            double maxArea = -1;
+            int maxIndex = start;
+            for (int i = start; i < end; i++) {
+                // Twice the triangle area; the constant factor does not change the maximum
+                double area = Math.abs((ax - avgX) * (y[i] - ay) - (ax - x[i]) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    maxIndex = i;
+                }
+            }
+            selected[selectedCount++] = maxIndex;
+            a = maxIndex;
+        }
+
+        selected[selectedCount++] = to - 1;
+        return selected;
+    }
+
+    public static int[] minMax(double[] x, double[] y, int count, int buckets) {
+        return minMax(x, y, 0, count, buckets);
+    }
+
+    /**
+     * 將資料分成 buckets 個區間，每個區間保留最小與最大值 (依原順序)
+     */
+    public static int[] minMax(double[] x, double[] y, int from, int to, int buckets) {
+        int count = to - from;
+        if (buckets * 2 >= count) {
+            return identity(from, to);
+        }
+
+        int[] selected = new int[buckets * 2];
+        int selectedCount = 0;
+        double bucketSize = (double) count / buckets;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            int start = from + (int) Math.floor(bucket * bucketSize);
+            int end = from + Math.min((int) Math.floor((bucket + 1) * bucketSize), count);
+            if (start >= end) {
+                continue;
+            }
+            int minIndex = start;
+            int maxIndex = start;
+            for (int i = start + 1; i < end; i++) {
+                if (y[i] < y[minIndex]) {
+                    minIndex = i;
+                }
+                if (y[i] > y[maxIndex]) {
+                    maxIndex = i;
+                }
+            }
+            if (minIndex == maxIndex) {
+                selected[selectedCount++] = minIndex;
+            } else {
+                selected[selectedCount++] = Math.min(minIndex, maxIndex);
+                selected[selectedCount++] = Math.max(minIndex, maxIndex);
+            }
+        }
+        if (selectedCount == selected.length) {
+            return selected;
+        }
+        int[] trimmed = new int[selectedCount];
+        System.arraycopy(selected, 0, trimmed, 0, selectedCount);
+        return trimmed;
+    }
+
+    private static int[] identity(int from, int to) {
+        int[] all = new int[Math.max(0, to - from)];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = from + i;
+        }
+        return all;
+    }
+}
@@ -0,0 +1,58 @@
+package com.healthbuddy;
+
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * 日期轉換類別
+ * 資料庫以 epoch day (自 1970-01-01 起的天數) 整數儲存日期；
+ * 這裡集中處理與畫面上 MM/dd/yyyy 字串之間的轉換，所有方法皆為執行緒安全
+ */
+public final class EpochDays {
+    public static final DateTimeFormatter DISPLAY_FORMAT = DateTimeFormatter.ofPattern("MM/dd/yyyy");
+
+    private EpochDays() {
+    }
+
+    /**
+     * 今天的 epoch day
+     */
+    public static int today() {
+        return of(LocalDate.now());
+    }
+
+    public static int of(LocalDate date) {
+        return Math.toIntExact(date.toEpochDay());
+    }
+
+    public static LocalDate toLocalDate(int epochDay) {
+        return LocalDate.ofEpochDay(epochDay);
+    }
+
+    /**
+     * 解析畫面上的 MM/dd/yyyy 日期；沿用 ParseException 讓原本的錯誤處理維持不變
+     */
+    public static int fromDisplay(String date) throws ParseException {
+        try {
+            return of(LocalDate.parse(date.trim(), DISPLAY_FORMAT));
+        } catch (DateTimeParseException e) {
+            throw new ParseException("Unparseable date: \"" + date + "\"", e.getErrorIndex());
+        }
+    }
+
+    /**
+     * 轉成畫面使用的 MM/dd/yyyy
+     */
+    public static String toDisplay(int epochDay) {
+        return DISPLAY_FORMAT.format(LocalDate.ofEpochDay(epochDay));
+    }
+
+    /**
+     * 轉成匯出與圖表使用的 yyyy-MM-dd
+     */
+    public static String toIso(int epochDay) {
+        return LocalDate.ofEpochDay(epochDay).toString();
+    }
+}
@@ -0,0 +1,426 @@
+package com.healthbuddy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 歷史健康數據封存類別
+ * 超過設定天數的舊資料從 health_data 移到每位使用者的固定寬度二進位區段檔，以 MappedByteBuffer 讀回；
+ * 區段檔寫入後不再修改，讀取時與資料庫中的資料合併，同一天兩邊都有時以資料庫為準，多個區段重疊時以較新的區段為準
+ *
+ * 區段檔格式 (大端序)：16 位元組檔頭 (magic "HBAR"、版本、每筆長度、筆數)，
+ * 接著依日期遞增排列的 36 位元組紀錄：date int、weight double、bmi double、steps int、systolic int、
+ * diastolic int、heart_rate int；未記錄的 double 為 NaN，int 為 HealthSeriesStore.MISSING
+ */
+public final class HealthArchive {
+    private static final Path ARCHIVE_DIR = Paths.get(System.getProperty("healthbuddy.archive.dir", "health_buddy_archive"));
+    // Readings older than this many days are archived; archiving deletes rows, so it stays off (0) unless set
+    private static final int ARCHIVE_AGE_DAYS = Integer.getInteger("healthbuddy.archive.ageDays", 0);
+    // Fewer old readings than this are left in the database rather than written as a tiny segment
+    private static final int MIN_ARCHIVE_ROWS = Integer.getInteger("healthbuddy.archive.minRows", 256);
+
+    private static final int MAGIC = 0x48424152; // "HBAR"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 36;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".hba";
+
+    // Mapped segments per user, oldest first; replaced as a whole when a segment is added
+    private static final Map<String, List<Segment>> segments = new ConcurrentHashMap<>();
+
+    private HealthArchive() {
+    }
+
+    /**
+     * 是否已以 healthbuddy.archive.ageDays 啟用封存
+     */
+    public static boolean isEnabled() {
+        return ARCHIVE_AGE_DAYS > 0;
+    }
+
+    /**
+     * 封存使用者超過設定天數的資料；封存點對齊月初，讓每個月的資料只在其中一邊
+     *
+     * @return 封存的筆數，未達門檻或未啟用時為 0
+     */
+    public static int archiveOldReadings(DatabaseManager dbManager, String username) throws SQLException {
+        if (!isEnabled()) {
+            return 0;
+        }
+        LocalDate cutoff = LocalDate.now().minusDays(ARCHIVE_AGE_DAYS).withDayOfMonth(1);
+        int beforeDay = EpochDays.of(cutoff);
+        if (dbManager.countReadingsBefore(username, beforeDay) < MIN_ARCHIVE_ROWS) {
+            return 0;
+        }
+        int archived = dbManager.archiveReadings(username, beforeDay);
+        System.out.println(String.format("Archived %d readings of %s before %s", archived, username, cutoff));
+        return archived;
+    }
+
+    /**
+     * 將 rows (date, weight, bmi, steps, systolic, diastolic, heart_rate，任意順序) 寫成新的區段檔；
+     * 檔案內容同步到磁碟、以原子搬移放到定位並同步目錄後才回傳，呼叫端之後才可提交刪除
+     *
+     * @return 寫入的筆數
+     */
+    static int writeSegment(String username, ResultSet rows) throws SQLException, IOException {
+        int capacity = 1024;
+        int count = 0;
+        ByteBuffer records = ByteBuffer.allocate(capacity * RECORD_SIZE);
+        long[] order = new long[capacity];
+        while (rows.next()) {
+            if (count == capacity) {
+                capacity *= 2;
+                records = ByteBuffer.allocate(capacity * RECORD_SIZE).put(records.flip());
+                order = Arrays.copyOf(order, capacity);
+            }
+            int day = rows.getInt(1);
+            records.putInt(day);
+            records.putDouble(readDouble(rows, 2));
+            records.putDouble(readDouble(rows, 3));
+            records.putInt(readInt(rows, 4));
+            records.putInt(readInt(rows, 5));
+            records.putInt(readInt(rows, 6));
+            records.putInt(readInt(rows, 7));
+            // Day in the high half, row in the low half: sorting the keys sorts the rows by day
+            order[count] = ((long) day << 32) | count;
+            count++;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        Arrays.sort(order, 0, count);
+
+        // One writer at a time, so two archive runs never pick the same sequence number
+        synchronized (segments) {
+            return publishSegment(username, records.array(), order, count);
+        }
+    }
+
+    private static int publishSegment(String username, byte[] source, long[] order, int count)
+            throws SQLException, IOException {
+        Path directory = userDirectory(username);
+        Files.createDirectories(directory);
+        List<Segment> existing = segmentsOf(username);
+        int sequence = existing.isEmpty() ? 1 : existing.get(existing.size() - 1).sequence + 1;
+        Path target = directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + count * RECORD_SIZE);
+        out.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(count);
+        for (int i = 0; i < count; i++) {
+            int row = (int) order[i];
+            out.put(source, row * RECORD_SIZE, RECORD_SIZE);
+        }
+        out.flip();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        // The rename, and the user directory on the first run, are only durable once their directories are
+        forceDirectory(directory);
+        forceDirectory(directory.getParent());
+
+        List<Segment> updated = new ArrayList<>(existing);
+        updated.add(Segment.open(target, sequence));
+        segments.put(username, Collections.unmodifiableList(updated));
+        return count;
+    }
+
+    private static void forceDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException e) {
+            // Windows cannot open a directory as a channel; NTFS journals the rename itself
+        }
+    }
+
+    /**
+     * 依日期遞增走訪 [fromDay, toDay] 內的封存資料，每天最多一筆
+     */
+    static Cursor cursor(String username, int fromDay, int toDay) throws SQLException {
+        return new Cursor(segmentsOf(username), fromDay, toDay);
+    }
+
+    /**
+     * [fromDay, toDay] 內是否有封存資料
+     */
+    static boolean hasData(String username, int fromDay, int toDay) throws SQLException {
+        for (Segment segment : segmentsOf(username)) {
+            int index = segment.lowerBound(fromDay);
+            if (index < segment.count && segment.day(index) <= toDay) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * [fromDay, toDay] 內的封存筆數上限；區段重疊的日子會重複計算
+     */
+    static long count(String username, int fromDay, int toDay) throws SQLException {
+        long total = 0;
+        for (Segment segment : segmentsOf(username)) {
+            total += segment.upperBound(toDay) - segment.lowerBound(fromDay);
+        }
+        return Math.max(0, total);
+    }
+
+    private static List<Segment> segmentsOf(String username) throws SQLException {
+        List<Segment> cached = segments.get(username);
+        if (cached != null) {
+            return cached;
+        }
+        synchronized (segments) {
+            cached = segments.get(username);
+            if (cached == null) {
+                try {
+                    cached = openSegments(username);
+                } catch (IOException e) {
+                    throw new SQLException("Cannot read archive of " + username + ": " + e.getMessage(), e);
+                }
+                segments.put(username, cached);
+            }
+            return cached;
+        }
+    }
+
+    private static List<Segment> openSegments(String username) throws IOException {
+        Path directory = userDirectory(username);
+        if (!Files.isDirectory(directory)) {
+            return Collections.emptyList();
+        }
+        List<Segment> opened = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int sequence = Integer.parseInt(
+                        name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                opened.add(Segment.open(file, sequence));
+            }
+        }
+        opened.sort((a, b) -> Integer.compare(a.sequence, b.sequence));
+        return Collections.unmodifiableList(opened);
+    }
+
+    // Usernames are hex encoded so any name maps to a safe directory name
+    private static Path userDirectory(String username) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : username.getBytes(StandardCharsets.UTF_8)) {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return ARCHIVE_DIR.resolve(name.toString());
+    }
+
+    private static double readDouble(ResultSet rs, int index) throws SQLException {
+        double value = rs.getDouble(index);
+        return rs.wasNull() ? Double.NaN : value;
+    }
+
+    private static int readInt(ResultSet rs, int index) throws SQLException {
+        int value = rs.getInt(index);
+        return rs.wasNull() ? HealthSeriesStore.MISSING : value;
+    }
+
+    /**
+     * 一個已映射到記憶體的區段檔；只使用絕對位置讀取，可由多個執行緒同時使用
+     */
+    private static final class Segment {
+        private final int sequence;
+        private final MappedByteBuffer buffer;
+        private final int count;
+
+        private Segment(int sequence, MappedByteBuffer buffer, int count) {
+            this.sequence = sequence;
+            this.buffer = buffer;
+            this.count = count;
+        }
+
+        static Segment open(Path file, int sequence) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                // The mapping stays valid after the channel is closed
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                        || buffer.getInt(8) != RECORD_SIZE) {
+                    throw new IOException("Not an archive segment: " + file);
+                }
+                int count = buffer.getInt(12);
+                if (HEADER_SIZE + (long) count * RECORD_SIZE > buffer.limit()) {
+                    throw new IOException("Truncated archive segment: " + file);
+                }
+                return new Segment(sequence, buffer, count);
+            }
+        }
+
+        private int offset(int index) {
+            return HEADER_SIZE + index * RECORD_SIZE;
+        }
+
+        int day(int index) {
+            return buffer.getInt(offset(index));
+        }
+
+        double weight(int index) {
+            return buffer.getDouble(offset(index) + 4);
+        }
+
+        double bmi(int index) {
+            return buffer.getDouble(offset(index) + 12);
+        }
+
+        int steps(int index) {
+            return buffer.getInt(offset(index) + 20);
+        }
+
+        int systolic(int index) {
+            return buffer.getInt(offset(index) + 24);
+        }
+
+        int diastolic(int index) {
+            return buffer.getInt(offset(index) + 28);
+        }
+
+        int heartRate(int index) {
+            return buffer.getInt(offset(index) + 32);
+        }
+
+        int lowerBound(int epochDay) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (day(mid) < epochDay) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        int upperBound(int epochDay) {
+            return epochDay == Integer.MAX_VALUE ? count : lowerBound(epochDay + 1);
+        }
+    }
+
+    /**
+     * 合併所有區段的走訪器；先呼叫 next()，回傳 true 後才能讀取目前這一天的數值
+     */
+    static final class Cursor {
+        private final Segment[] sources;
+        private final int[] positions;
+        private final int[] ends;
+        private Segment current;
+        private int index;
+
+        private Cursor(List<Segment> segments, int fromDay, int toDay) {
+            sources = segments.toArray(new Segment[0]);
+            positions = new int[sources.length];
+            ends = new int[sources.length];
+            for (int s = 0; s < sources.length; s++) {
+                positions[s] = sources[s].lowerBound(fromDay);
+                ends[s] = sources[s].upperBound(toDay);
+            }
+        }
+
+        boolean next() {
+            int best = -1;
+            int bestDay = 0;
+            for (int s = 0; s < sources.length; s++) {
+                if (positions[s] >= ends[s]) {
+                    continue;
+                }
+                int day = sources[s].day(positions[s]);
+                // Segments are oldest first, so on a tie the later one replaces the earlier
+                if (best < 0 || day <= bestDay) {
+                    best = s;
+                    bestDay = day;
+                }
+            }
+            if (best < 0) {
+                current = null;
+                return false;
+            }
+            for (int s = 0; s < sources.length; s++) {
+                if (positions[s] < ends[s] && sources[s].day(positions[s]) == bestDay) {
+                    if (s == best) {
+                        current = sources[s];
+                        index = positions[s];
+                    }
+                    positions[s]++;
+                }
+            }
+            return true;
+        }
+
+        int day() {
+            return current.day(index);
+        }
+
+        double weight() {
+            return current.weight(index);
+        }
+
+        double bmi() {
+            return current.bmi(index);
+        }
+
+        int steps() {
+            return current.steps(index);
+        }
+
+        int systolic() {
+            return current.systolic(index);
+        }
+
+        int diastolic() {
+            return current.diastolic(index);
+        }
+
+        int heartRate() {
+            return current.heartRate(index);
+        }
+
+        /**
+         * 目前這一天的資料；未記錄的數值為 0，與 HealthData 的慣例相同
+         */
+        HealthData toHealthData() {
+            HealthData data = new HealthData();
+            data.setDate(EpochDays.toLocalDate(day()));
+            data.setWeight(Double.isNaN(weight()) ? 0 : weight());
+            data.setBmi(Double.isNaN(bmi()) ? 0 : bmi());
+            data.setSteps(steps() == HealthSeriesStore.MISSING ? 0 : steps());
+            if (systolic() != HealthSeriesStore.MISSING && diastolic() != HealthSeriesStore.MISSING) {
+                data.setSystolic(systolic());
+                data.setDiastolic(diastolic());
+            }
+            data.setHeartRate(heartRate() == HealthSeriesStore.MISSING ? 0 : heartRate());
+            return data;
+        }
+    }
+}
@@ -6,7 +6,9 @@ public class HealthData {
     private double weight;
     private double bmi;
     private int steps;
-    private String bloodPressure;
+    // Blood pressure in mmHg; 0 means not recorded
+    private int systolic;
+    private int diastolic;
     private int heartRate;
     private LocalDate date;
 
@@ -48,12 +50,60 @@ public class HealthData {
         this.steps = steps;
     }
 
+    public int getSystolic() {
+        return systolic;
+    }
+
+    public void setSystolic(int systolic) {
+        this.systolic = systolic;
+    }
+
+    public int getDiastolic() {
+        return diastolic;
+    }
+
+    public void setDiastolic(int diastolic) {
+        this.diastolic = diastolic;
+    }
+
+    /**
+     * 以 "120/80" 格式表示的血壓，尚未記錄時回傳 null
+     */
     public String getBloodPressure() {
-        return bloodPressure;
+        return hasBloodPressure() ? systolic + "/" + diastolic : null;
     }
 
+    /**
+     * 解析 "120/80" 格式的血壓；null 或無法解析時視為未記錄
+     */
     public void setBloodPressure(String bloodPressure) {
-        this.bloodPressure = bloodPressure;
+        this.systolic = parseSystolic(bloodPressure);
+        this.diastolic = systolic > 0 ? parseDiastolic(bloodPressure) : 0;
+        if (diastolic == 0) {
+            systolic = 0;
+        }
+    }
+
+    public boolean hasBloodPressure() {
+        return systolic > 0 && diastolic > 0;
+    }
+
+    static int parseSystolic(String bloodPressure) {
+        int slash = bloodPressure != null ? bloodPressure.indexOf('/') : -1;
+        return slash > 0 ? parsePositive(bloodPressure.substring(0, slash)) : 0;
+    }
+
+    static int parseDiastolic(String bloodPressure) {
+        int slash = bloodPressure != null ? bloodPressure.indexOf('/') : -1;
+        return slash > 0 ? parsePositive(bloodPressure.substring(slash + 1)) : 0;
+    }
+
+    private static int parsePositive(String text) {
+        try {
+            return Math.max(0, Integer.parseInt(text.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
     }
 
     public int getHeartRate() {
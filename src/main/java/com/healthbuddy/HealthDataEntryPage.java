@@ -4,11 +4,6 @@ import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import java.awt.*;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.text.ParseException;
 
 public class HealthDataEntryPage extends JFrame {
@@ -24,13 +19,18 @@ public class HealthDataEntryPage extends JFrame {
     private JTextField heartRateField;
     private JTextField dateField;
     private JLabel bmiLabel;
+    private JButton saveButton;
+    // Restarted on every keystroke so BMI is recomputed once typing pauses
+    private final Timer bmiTimer = new Timer(BMI_DEBOUNCE_MS, e -> updateBMI());
 
-    private boolean isDataExists = false;
+    private static final int BMI_DEBOUNCE_MS = 250;
 
     public HealthDataEntryPage(User user, HomePage homePage) {
         this.user = user;
         this.homePage = homePage;
+        bmiTimer.setRepeats(false);
         setupUI();
+        loadProfile();
         setDefaultDate();
         loadExistingData();
     }
@@ -92,17 +92,17 @@ public class HealthDataEntryPage extends JFrame {
         weightField.getDocument().addDocumentListener(new DocumentListener() {
             @Override
             public void insertUpdate(DocumentEvent e) {
-                updateBMI();
+                bmiTimer.restart();
             }
 
             @Override
             public void removeUpdate(DocumentEvent e) {
-                updateBMI();
+                bmiTimer.restart();
             }
 
             @Override
             public void changedUpdate(DocumentEvent e) {
-                updateBMI();
+                bmiTimer.restart();
             }
         });
         gbc.gridx = 1;
@@ -142,7 +142,7 @@ public class HealthDataEntryPage extends JFrame {
 
         // Buttons
         JPanel buttonPanel = new JPanel();
-        JButton saveButton = new JButton("Save");
+        saveButton = new JButton("Save");
         saveButton.addActionListener(e -> saveHealthData());
         JButton backButton = new JButton("Back");
         backButton.addActionListener(e -> {
@@ -164,8 +164,7 @@ public class HealthDataEntryPage extends JFrame {
     }
 
     private void setDefaultDate() {
-        SimpleDateFormat formatter = new SimpleDateFormat("MM/dd/yyyy");
-        dateField.setText(formatter.format(new Date()));
+        dateField.setText(EpochDays.toDisplay(EpochDays.today()));
     }
 
     private void loadExistingData() {
@@ -176,120 +175,110 @@ public class HealthDataEntryPage extends JFrame {
         if (date.isEmpty())
             return;
 
-        try {
-            DatabaseManager dbManager = new DatabaseManager();
-            dbManager.connect();
-            SimpleDateFormat inputFormat = new SimpleDateFormat("MM/dd/yyyy");
-            SimpleDateFormat outputFormat = new SimpleDateFormat("yyyy-MM-dd");
-            Date parsedDate;
-            try {
-                parsedDate = inputFormat.parse(date);
-            } catch (ParseException e) {
-                JOptionPane.showMessageDialog(this, "Date parsing error: " + e.getMessage(), "Error",
-                        JOptionPane.ERROR_MESSAGE);
-                return;
-            }
-            String formattedDate = outputFormat.format(parsedDate);
-            String query = "SELECT * FROM health_data WHERE username = ? AND date = date(?)";
-            // .out.println(query);
-            try (PreparedStatement pstmt = dbManager.getConnection().prepareStatement(query)) {
-                pstmt.setString(1, user.getUsername());
-                pstmt.setString(2, formattedDate);
-
-                ResultSet rs = pstmt.executeQuery();
-                if (rs.next()) {
-                    isDataExists = true;
-                    weightField.setText(String.valueOf(rs.getDouble("weight")));
-                    stepsField.setText(String.valueOf(rs.getInt("steps")));
-                    bloodPressureField.setText(rs.getString("blood_pressure"));
-                    heartRateField.setText(String.valueOf(rs.getInt("heart_rate")));
-                    bmiLabel.setText(String.format("%.2f", rs.getDouble("bmi")));
-                } else {
-                    isDataExists = false;
-                    weightField.setText("");
-                    stepsField.setText("");
-                    bloodPressureField.setText("");
-                    heartRateField.setText("");
-                    bmiLabel.setText("N/A");
-                }
-            }
-
-            dbManager.closeConnection();
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(this, "Database error: " + e.getMessage(), "Error",
-                    JOptionPane.ERROR_MESSAGE);
-        }
+        // Keyed on the page so only the most recently picked date fills the form
+        AsyncDataAccess.submit(this,
+                db -> db.getHealthDataForDate(user.getUsername(), date),
+                data -> {
+                    if (data != null) {
+                        weightField.setText(String.valueOf(data.getWeight()));
+                        stepsField.setText(String.valueOf(data.getSteps()));
+                        bloodPressureField.setText(data.getBloodPressure());
+                        heartRateField.setText(String.valueOf(data.getHeartRate()));
+                        bmiLabel.setText(String.format("%.2f", data.getBmi()));
+                    } else {
+                        weightField.setText("");
+                        stepsField.setText("");
+                        bloodPressureField.setText("");
+                        heartRateField.setText("");
+                        bmiLabel.setText("N/A");
+                    }
+                },
+                e -> {
+                    if (e instanceof ParseException) {
+                        JOptionPane.showMessageDialog(this, "Date parsing error: " + e.getMessage(), "Error",
+                                JOptionPane.ERROR_MESSAGE);
+                    } else {
+                        JOptionPane.showMessageDialog(this, "Database error: " + e.getMessage(), "Error",
+                                JOptionPane.ERROR_MESSAGE);
+                    }
+                });
     }
 
     private void saveHealthData() {
+        HealthData data = new HealthData();
         try {
             double weight = Double.parseDouble(weightField.getText().trim());
             int steps = Integer.parseInt(stepsField.getText().trim());
             String bloodPressure = bloodPressureField.getText().trim();
             int heartRate = Integer.parseInt(heartRateField.getText().trim());
             String date = dateField.getText().trim();
-            SimpleDateFormat inputFormat = new SimpleDateFormat("MM/dd/yyyy");
-            SimpleDateFormat outputFormat = new SimpleDateFormat("yyyy-MM-dd");
-            Date parsedDate;
-            try {
-                parsedDate = inputFormat.parse(date);
-            } catch (ParseException e) {
-                JOptionPane.showMessageDialog(this, "Date parsing error: " + e.getMessage(), "Error",
-                        JOptionPane.ERROR_MESSAGE);
-                return;
-            }
-            String formattedDate = outputFormat.format(parsedDate);
 
             if (date.isEmpty()) {
                 JOptionPane.showMessageDialog(this, "Please select a date.", "Error", JOptionPane.WARNING_MESSAGE);
                 return;
             }
 
-            DatabaseManager dbManager = new DatabaseManager();
-            dbManager.connect();
-
-            double height = dbManager.getUser(user.getUsername()).getProfile().getHeight();
-            double bmi = weight / Math.pow(height / 100, 2);
-
-            String sql;
-            if (isDataExists) {
-                sql = "UPDATE health_data SET weight = ?, bmi = ?, steps = ?, blood_pressure = ?, heart_rate = ? WHERE username = ? AND date = date(?)";
-            } else {
-                sql = "INSERT INTO health_data (weight, bmi, steps, blood_pressure, heart_rate, username, date) VALUES (?, ?, ?, ?, ?, ?, date(?))";
-            }
-
-            try (PreparedStatement pstmt = dbManager.getConnection().prepareStatement(sql)) {
-                pstmt.setDouble(1, weight);
-                pstmt.setDouble(2, bmi);
-                pstmt.setInt(3, steps);
-                pstmt.setString(4, bloodPressure);
-                pstmt.setInt(5, heartRate);
-                pstmt.setString(6, user.getUsername());
-                pstmt.setString(7, formattedDate);
-
-                pstmt.executeUpdate();
-                JOptionPane.showMessageDialog(this, "Health data saved successfully!");
+            int epochDay;
+            try {
+                epochDay = EpochDays.fromDisplay(date);
+            } catch (ParseException e) {
+                JOptionPane.showMessageDialog(this, "Date parsing error: " + e.getMessage(), "Error",
+                        JOptionPane.ERROR_MESSAGE);
+                return;
             }
 
-            dbManager.closeConnection();
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(this, "Database error: " + e.getMessage(), "Error",
-                    JOptionPane.ERROR_MESSAGE);
+            data.setDate(EpochDays.toLocalDate(epochDay));
+            data.setWeight(weight);
+            data.setSteps(steps);
+            data.setBloodPressure(bloodPressure);
+            data.setHeartRate(heartRate);
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(this, "Invalid input. Please ensure all fields are filled correctly.",
                     "Error", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+
+        // The write and its rollup refresh run on a worker; the button stays off until it finishes
+        saveButton.setEnabled(false);
+        AsyncDataAccess.submit(null,
+                db -> {
+                    ProfileData profile = SessionCache.loadProfile(db, user.getUsername());
+                    double height = profile != null ? profile.getHeight() : 0;
+                    // Without a usable height the BMI stays unset and is saved as null
+                    if (height > 0) {
+                        data.setBmi(data.getWeight() / Math.pow(height / 100, 2));
+                    }
+                    db.saveHealthData(user.getUsername(), data);
+                    return data;
+                },
+                saved -> {
+                    saveButton.setEnabled(true);
+                    JOptionPane.showMessageDialog(this, "Health data saved successfully!");
+                },
+                e -> {
+                    saveButton.setEnabled(true);
+                    JOptionPane.showMessageDialog(this, "Database error: " + e.getMessage(), "Error",
+                            JOptionPane.ERROR_MESSAGE);
+                });
+    }
+
+    // Height is fetched once when the page opens; the BMI itself is computed purely from the cache
+    private void loadProfile() {
+        if (SessionCache.getProfile(user.getUsername()) != null) {
+            return;
         }
+        AsyncDataAccess.submit(null,
+                db -> SessionCache.loadProfile(db, user.getUsername()),
+                profile -> updateBMI(),
+                e -> JOptionPane.showMessageDialog(this, "Database error: " + e.getMessage(), "Error",
+                        JOptionPane.ERROR_MESSAGE));
     }
 
     private void updateBMI() {
+        ProfileData profile = SessionCache.getProfile(user.getUsername());
+        double height = profile != null ? profile.getHeight() : 0;
         try {
             double weight = Double.parseDouble(weightField.getText().trim());
-
-            DatabaseManager dbManager = new DatabaseManager();
-            dbManager.connect();
-            double height = dbManager.getUser(user.getUsername()).getProfile().getHeight();
-            dbManager.closeConnection();
-
             if (height > 0) {
                 double heightInMeters = height / 100;
                 double bmi = weight / (heightInMeters * heightInMeters);
@@ -299,9 +288,6 @@ public class HealthDataEntryPage extends JFrame {
             }
         } catch (NumberFormatException e) {
             bmiLabel.setText("N/A");
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(this, "Database error: " + e.getMessage(), "Error",
-                    JOptionPane.ERROR_MESSAGE);
         }
     }
 }
@@ -0,0 +1,714 @@
+package com.healthbuddy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 健康數據匯出類別
+ * 將一或多位使用者在任意日期範圍內的所有指標與每日習慣逐列串流寫出，格式為 CSV、JSON Lines 或區塊欄式二進位；
+ * 輸出經由可重複使用的 ByteBuffer 直接寫入 FileChannel (可選 gzip)，數字與日期直接編碼成位元組，不為每個欄位建立字串
+ *
+ * 二進位格式 (大端序)：
+ * 檔頭為 "HBCF"、版本 1、欄位數，接著每個欄位的型別 (I=int32、D=float64、S=字串) 與名稱；
+ * 之後是多個區塊，每個區塊為列數 (int32)、使用者名稱，再依欄位順序寫出 null 位元圖與非 null 的值；
+ * 列數為 0 的區塊代表檔案結束。字串以 uint16 位元組長度加 UTF-8 內容表示
+ */
+public class HealthDataExporter {
+    // Result set column order of DatabaseManager.getExportRows
+    static final String[] COLUMNS = { "date", "weight", "bmi", "steps", "systolic", "diastolic", "heart_rate",
+            "water_intake", "sleep_hours", "diet" };
+    private static final char[] TYPES = { 'I', 'D', 'D', 'I', 'I', 'I', 'I', 'I', 'I', 'S' };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BLOCK_ROWS = 4096;
+    // Listener calls are rate limited; the UI only needs a few updates per second
+    private static final int PROGRESS_INTERVAL = 2048;
+    private static final byte[] MAGIC = { 'H', 'B', 'C', 'F' };
+    private static final byte FORMAT_VERSION = 1;
+
+    public enum Format {
+        CSV(".csv"), JSON_LINES(".jsonl"), COLUMNAR(".hbc");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        /**
+         * 依副檔名判斷格式，忽略結尾的 .gz；.json/.jsonl/.ndjson 為 JSON Lines，.hbc 為二進位，其餘為 CSV
+         */
+        public static Format fromFileName(String fileName) {
+            String name = stripGzip(fileName.toLowerCase(Locale.ROOT));
+            if (name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json")) {
+                return JSON_LINES;
+            }
+            if (name.endsWith(".hbc")) {
+                return COLUMNAR;
+            }
+            return CSV;
+        }
+
+        public static boolean isGzip(String fileName) {
+            return fileName.toLowerCase(Locale.ROOT).endsWith(".gz");
+        }
+
+        private static String stripGzip(String name) {
+            return name.endsWith(".gz") ? name.substring(0, name.length() - 3) : name;
+        }
+    }
+
+    /**
+     * 匯出進度回報，於執行匯出的背景執行緒上呼叫
+     */
+    public interface ProgressListener {
+        void progress(long rowsWritten, long totalRows);
+    }
+
+    private final DatabaseManager dbManager;
+
+    // Values of the current row, reused for every row
+    private final double[] numbers = new double[COLUMNS.length];
+    private final String[] texts = new String[COLUMNS.length];
+    private final boolean[] present = new boolean[COLUMNS.length];
+
+    public HealthDataExporter(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    /**
+     * 匯出檔案，格式與是否壓縮依副檔名判斷
+     */
+    public ExportResult exportFile(List<String> usernames, int fromDay, int toDay, Path file,
+            ProgressListener listener) throws IOException, SQLException {
+        String name = file.getFileName().toString();
+        return exportFile(usernames, fromDay, toDay, file, Format.fromFileName(name), Format.isGzip(name), listener);
+    }
+
+    /**
+     * 依使用者順序匯出 [fromDay, toDay] 內的資料；執行緒被中斷時停止並拋出 InterruptedIOException
+     *
+     * @param listener 可為 null
+     */
+    public ExportResult exportFile(List<String> usernames, int fromDay, int toDay, Path file, Format format,
+            boolean gzip, ProgressListener listener) throws IOException, SQLException {
+        long start = System.nanoTime();
+        long totalRows = 0;
+        for (String username : usernames) {
+            totalRows += dbManager.countExportRows(username, fromDay, toDay)
+                    + HealthArchive.count(username, fromDay, toDay);
+        }
+
+        long rowsWritten = 0;
+        try (ChannelSink sink = new ChannelSink(file, gzip)) {
+            RowWriter writer = format == Format.CSV ? new CsvWriter(sink)
+                    : format == Format.JSON_LINES ? new JsonLinesWriter(sink) : new ColumnarWriter(sink);
+            writer.begin();
+            for (String username : usernames) {
+                // Archived days are merged in date order; a day still in the database is taken from there
+                HealthArchive.Cursor archived = HealthArchive.cursor(username, fromDay, toDay);
+                boolean hasArchived = archived.next();
+                try (ResultSet rs = dbManager.getExportRows(username, fromDay, toDay)) {
+                    while (rs.next()) {
+                        int day = rs.getInt(1);
+                        while (hasArchived && archived.day() < day) {
+                            readArchived(archived, true);
+                            rowsWritten = write(writer, username, rowsWritten, totalRows, listener);
+                            hasArchived = archived.next();
+                        }
+                        readRow(rs);
+                        if (hasArchived && archived.day() == day) {
+                            // Only the habits of that day are live; the readings were archived
+                            if (!hasReadings()) {
+                                readArchived(archived, false);
+                            }
+                            hasArchived = archived.next();
+                        }
+                        rowsWritten = write(writer, username, rowsWritten, totalRows, listener);
+                    }
+                }
+                while (hasArchived) {
+                    readArchived(archived, true);
+                    rowsWritten = write(writer, username, rowsWritten, totalRows, listener);
+                    hasArchived = archived.next();
+                }
+                writer.endUser();
+            }
+            writer.end();
+        }
+        if (listener != null) {
+            listener.progress(rowsWritten, totalRows);
+        }
+        return new ExportResult(rowsWritten, Files.size(file), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private long write(RowWriter writer, String username, long rowsWritten, long totalRows,
+            ProgressListener listener) throws IOException {
+        writer.row(username, numbers, texts, present);
+        if (++rowsWritten % PROGRESS_INTERVAL == 0) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Export cancelled after " + rowsWritten + " rows");
+            }
+            if (listener != null) {
+                listener.progress(rowsWritten, totalRows);
+            }
+        }
+        return rowsWritten;
+    }
+
+    private void readRow(ResultSet rs) throws SQLException {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            switch (TYPES[i]) {
+                case 'I':
+                    numbers[i] = rs.getInt(i + 1);
+                    break;
+                case 'D':
+                    numbers[i] = rs.getDouble(i + 1);
+                    break;
+                default:
+                    texts[i] = rs.getString(i + 1);
+                    break;
+            }
+            present[i] = !rs.wasNull();
+        }
+    }
+
+    // Columns 1 to 6 are the health_data readings, the rest are daily habits
+    private boolean hasReadings() {
+        for (int i = 1; i <= 6; i++) {
+            if (present[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void readArchived(HealthArchive.Cursor archived, boolean clearHabits) {
+        numbers[0] = archived.day();
+        present[0] = true;
+        setDouble(1, archived.weight());
+        setDouble(2, archived.bmi());
+        setInt(3, archived.steps());
+        setInt(4, archived.systolic());
+        setInt(5, archived.diastolic());
+        setInt(6, archived.heartRate());
+        if (clearHabits) {
+            for (int i = 7; i < COLUMNS.length; i++) {
+                present[i] = false;
+            }
+        }
+    }
+
+    private void setDouble(int column, double value) {
+        numbers[column] = value;
+        present[column] = !Double.isNaN(value);
+    }
+
+    private void setInt(int column, int value) {
+        numbers[column] = value;
+        present[column] = value != HealthSeriesStore.MISSING;
+    }
+
+    private abstract static class RowWriter {
+        final ChannelSink sink;
+
+        RowWriter(ChannelSink sink) {
+            this.sink = sink;
+        }
+
+        void begin() throws IOException {
+        }
+
+        abstract void row(String username, double[] numbers, String[] texts, boolean[] present) throws IOException;
+
+        void endUser() throws IOException {
+        }
+
+        void end() throws IOException {
+        }
+
+        // Integers are written without a fraction, weight and BMI with two decimals
+        void value(int column, double[] numbers) throws IOException {
+            if (TYPES[column] == 'I') {
+                sink.putLong((long) numbers[column]);
+            } else {
+                sink.putFixed2(numbers[column]);
+            }
+        }
+    }
+
+    private static final class CsvWriter extends RowWriter {
+        CsvWriter(ChannelSink sink) {
+            super(sink);
+        }
+
+        @Override
+        void begin() throws IOException {
+            // The header matches HealthDataImporter's column names, so the file can be imported again
+            sink.putAscii("username");
+            for (String column : COLUMNS) {
+                sink.put((byte) ',');
+                sink.putAscii(column);
+            }
+            sink.put((byte) '\n');
+        }
+
+        @Override
+        void row(String username, double[] numbers, String[] texts, boolean[] present) throws IOException {
+            sink.putCsvText(username);
+            sink.put((byte) ',');
+            sink.putIsoDate((int) numbers[0]);
+            for (int i = 1; i < COLUMNS.length; i++) {
+                sink.put((byte) ',');
+                if (!present[i]) {
+                    continue;
+                }
+                if (TYPES[i] == 'S') {
+                    sink.putCsvText(texts[i]);
+                } else {
+                    value(i, numbers);
+                }
+            }
+            sink.put((byte) '\n');
+        }
+    }
+
+    private static final class JsonLinesWriter extends RowWriter {
+        JsonLinesWriter(ChannelSink sink) {
+            super(sink);
+        }
+
+        @Override
+        void row(String username, double[] numbers, String[] texts, boolean[] present) throws IOException {
+            // Null values are left out, the same way the importer treats missing keys
+            sink.putAscii("{\"username\":");
+            sink.putJsonText(username);
+            sink.putAscii(",\"date\":\"");
+            sink.putIsoDate((int) numbers[0]);
+            sink.put((byte) '"');
+            for (int i = 1; i < COLUMNS.length; i++) {
+                if (!present[i]) {
+                    continue;
+                }
+                sink.putAscii(",\"");
+                sink.putAscii(COLUMNS[i]);
+                sink.putAscii("\":");
+                if (TYPES[i] == 'S') {
+                    sink.putJsonText(texts[i]);
+                } else {
+                    value(i, numbers);
+                }
+            }
+            sink.putAscii("}\n");
+        }
+    }
+
+    // Buffers up to BLOCK_ROWS rows of one user and writes them column by column
+    private static final class ColumnarWriter extends RowWriter {
+        private final double[][] blockNumbers = new double[COLUMNS.length][];
+        private final String[][] blockTexts = new String[COLUMNS.length][];
+        private final boolean[][] blockPresent = new boolean[COLUMNS.length][BLOCK_ROWS];
+        private String blockUser;
+        private int blockRows;
+
+        ColumnarWriter(ChannelSink sink) {
+            super(sink);
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (TYPES[i] == 'S') {
+                    blockTexts[i] = new String[BLOCK_ROWS];
+                } else {
+                    blockNumbers[i] = new double[BLOCK_ROWS];
+                }
+            }
+        }
+
+        @Override
+        void begin() throws IOException {
+            sink.putBytes(MAGIC);
+            sink.put(FORMAT_VERSION);
+            sink.put((byte) COLUMNS.length);
+            for (int i = 0; i < COLUMNS.length; i++) {
+                sink.put((byte) TYPES[i]);
+                sink.put((byte) COLUMNS[i].length());
+                sink.putAscii(COLUMNS[i]);
+            }
+        }
+
+        @Override
+        void row(String username, double[] numbers, String[] texts, boolean[] present) throws IOException {
+            blockUser = username;
+            for (int i = 0; i < COLUMNS.length; i++) {
+                blockPresent[i][blockRows] = present[i];
+                if (TYPES[i] == 'S') {
+                    blockTexts[i][blockRows] = present[i] ? texts[i] : null;
+                } else {
+                    blockNumbers[i][blockRows] = numbers[i];
+                }
+            }
+            if (++blockRows == BLOCK_ROWS) {
+                flushBlock();
+            }
+        }
+
+        @Override
+        void endUser() throws IOException {
+            flushBlock();
+        }
+
+        @Override
+        void end() throws IOException {
+            flushBlock();
+            sink.putInt(0);
+        }
+
+        private void flushBlock() throws IOException {
+            if (blockRows == 0) {
+                return;
+            }
+            sink.putInt(blockRows);
+            sink.putLengthPrefixed(blockUser);
+            for (int column = 0; column < COLUMNS.length; column++) {
+                boolean[] columnPresent = blockPresent[column];
+                for (int i = 0; i < blockRows; i += 8) {
+                    int bits = 0;
+                    for (int bit = 0; bit < 8 && i + bit < blockRows; bit++) {
+                        if (columnPresent[i + bit]) {
+                            bits |= 1 << bit;
+                        }
+                    }
+                    sink.put((byte) bits);
+                }
+                for (int i = 0; i < blockRows; i++) {
+                    if (!columnPresent[i]) {
+                        continue;
+                    }
+                    switch (TYPES[column]) {
+                        case 'I':
+                            sink.putInt((int) blockNumbers[column][i]);
+                            break;
+                        case 'D':
+                            sink.putDouble(blockNumbers[column][i]);
+                            break;
+                        default:
+                            sink.putLengthPrefixed(blockTexts[column][i]);
+                            blockTexts[column][i] = null;
+                            break;
+                    }
+                }
+            }
+            blockRows = 0;
+        }
+    }
+
+    /**
+     * 以單一 ByteBuffer 緩衝輸出的 channel，提供不產生中間字串的數字、日期與文字編碼
+     */
+    private static final class ChannelSink implements Closeable {
+        private final ByteBuffer buffer;
+        private final WritableByteChannel channel;
+        private final byte[] digits = new byte[20];
+
+        ChannelSink(Path file, boolean gzip) throws IOException {
+            FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            if (gzip) {
+                // The stream adapter copies into a heap array anyway, so a heap buffer avoids a second copy
+                buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                channel = Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(fileChannel), BUFFER_SIZE));
+            } else {
+                buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                channel = fileChannel;
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void put(byte b) throws IOException {
+            ensure(1);
+            buffer.put(b);
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putDouble(double value) throws IOException {
+            ensure(8);
+            buffer.putDouble(value);
+        }
+
+        void putAscii(String text) throws IOException {
+            ensure(text.length());
+            for (int i = 0; i < text.length(); i++) {
+                buffer.put((byte) text.charAt(i));
+            }
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(20);
+            if (value < 0) {
+                buffer.put((byte) '-');
+                value = -value;
+            }
+            int pos = digits.length;
+            do {
+                digits[--pos] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+            buffer.put(digits, pos, digits.length - pos);
+        }
+
+        // Same rounding as the former "%.2f" export
+        void putFixed2(double value) throws IOException {
+            if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= 1e15) {
+                putAscii(String.format(Locale.ROOT, "%.2f", value));
+                return;
+            }
+            long scaled = Math.round(Math.abs(value) * 100);
+            if (value < 0 && scaled != 0) {
+                put((byte) '-');
+            }
+            putLong(scaled / 100);
+            ensure(3);
+            int cents = (int) (scaled % 100);
+            buffer.put((byte) '.');
+            buffer.put((byte) ('0' + cents / 10));
+            buffer.put((byte) ('0' + cents % 10));
+        }
+
+        // yyyy-MM-dd from an epoch day without a LocalDate (civil-from-days, proleptic Gregorian)
+        void putIsoDate(int epochDay) throws IOException {
+            long z = epochDay + 719_468L;
+            long era = Math.floorDiv(z, 146_097L);
+            long dayOfEra = z - era * 146_097L;
+            long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+            long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+            long shiftedMonth = (5 * dayOfYear + 2) / 153;
+            int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+            int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+            long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+            if (year < 0 || year > 9999) {
+                putAscii(EpochDays.toIso(epochDay));
+                return;
+            }
+            ensure(10);
+            int y = (int) year;
+            buffer.put((byte) ('0' + y / 1000));
+            buffer.put((byte) ('0' + y / 100 % 10));
+            buffer.put((byte) ('0' + y / 10 % 10));
+            buffer.put((byte) ('0' + y % 10));
+            buffer.put((byte) '-');
+            buffer.put((byte) ('0' + month / 10));
+            buffer.put((byte) ('0' + month % 10));
+            buffer.put((byte) '-');
+            buffer.put((byte) ('0' + day / 10));
+            buffer.put((byte) ('0' + day % 10));
+        }
+
+        void putCsvText(String text) throws IOException {
+            boolean quote = false;
+            for (int i = 0; i < text.length() && !quote; i++) {
+                char c = text.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                putUtf8(text, false);
+                return;
+            }
+            put((byte) '"');
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '"') {
+                    put((byte) '"');
+                }
+                putChar(text, i);
+                if (isSurrogatePair(text, i)) {
+                    i++;
+                }
+            }
+            put((byte) '"');
+        }
+
+        void putJsonText(String text) throws IOException {
+            put((byte) '"');
+            putUtf8(text, true);
+            put((byte) '"');
+        }
+
+        void putLengthPrefixed(String text) throws IOException {
+            int length = utf8Length(text);
+            if (length > 0xFFFF) {
+                throw new IOException("Text value longer than 65535 bytes");
+            }
+            ensure(2);
+            buffer.putShort((short) length);
+            putUtf8(text, false);
+        }
+
+        private void putUtf8(String text, boolean jsonEscape) throws IOException {
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (jsonEscape && (c == '"' || c == '\\' || c < 0x20)) {
+                    putJsonEscape(c);
+                    continue;
+                }
+                putChar(text, i);
+                if (isSurrogatePair(text, i)) {
+                    i++;
+                }
+            }
+        }
+
+        private void putJsonEscape(char c) throws IOException {
+            ensure(6);
+            buffer.put((byte) '\\');
+            switch (c) {
+                case '"':
+                case '\\':
+                    buffer.put((byte) c);
+                    break;
+                case '\n':
+                    buffer.put((byte) 'n');
+                    break;
+                case '\r':
+                    buffer.put((byte) 'r');
+                    break;
+                case '\t':
+                    buffer.put((byte) 't');
+                    break;
+                default:
+                    buffer.put((byte) 'u');
+                    buffer.put((byte) '0');
+                    buffer.put((byte) '0');
+                    buffer.put((byte) Character.forDigit(c >> 4, 16));
+                    buffer.put((byte) Character.forDigit(c & 0xF, 16));
+                    break;
+            }
+        }
+
+        // Encodes the character at index as UTF-8, combining a surrogate pair into one code point
+        private void putChar(String text, int index) throws IOException {
+            char c = text.charAt(index);
+            ensure(4);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (isSurrogatePair(text, index)) {
+                int codePoint = Character.toCodePoint(c, text.charAt(index + 1));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+
+        // A lone surrogate is written as '?' and the character after it is kept; every encoder and
+        // utf8Length skip the next character only through this check, so their byte counts agree
+        private static boolean isSurrogatePair(String text, int index) {
+            return Character.isHighSurrogate(text.charAt(index)) && index + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(index + 1));
+        }
+
+        private static int utf8Length(String text) {
+            int length = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c < 0x80) {
+                    length += 1;
+                } else if (c < 0x800) {
+                    length += 2;
+                } else if (isSurrogatePair(text, i)) {
+                    length += 4;
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    length += 1;
+                } else {
+                    length += 3;
+                }
+            }
+            return length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    public static class ExportResult {
+        private final long rowsWritten;
+        private final long bytesWritten;
+        private final long elapsedMillis;
+
+        public ExportResult(long rowsWritten, long bytesWritten, long elapsedMillis) {
+            this.rowsWritten = rowsWritten;
+            this.bytesWritten = bytesWritten;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public long getRowsWritten() {
+            return rowsWritten;
+        }
+
+        /**
+         * 檔案大小，壓縮時為壓縮後的大小
+         */
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedMillis > 0 ? rowsWritten * 1000.0 / elapsedMillis : rowsWritten;
+        }
+    }
+}
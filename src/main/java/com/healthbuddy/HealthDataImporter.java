@@ -0,0 +1,460 @@
+package com.healthbuddy;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * 健康數據匯入類別
+ * 逐行讀取穿戴裝置匯出的 CSV 或 JSON Lines 檔案，驗證後分批寫入資料庫，記憶體用量與檔案大小無關
+ */
+public class HealthDataImporter {
+    private static final int MAX_REPORTED_ERRORS = 20;
+    private static final DateTimeFormatter DISPLAY_DATE = DateTimeFormatter.ofPattern("MM/dd/yyyy");
+    // Daily habit columns written by HealthDataExporter; they are not imported
+    private static final String[] HABIT_COLUMNS = { "water_intake", "sleep_hours", "diet" };
+
+    public enum Format {
+        CSV, JSON_LINES;
+
+        /**
+         * 依副檔名判斷檔案格式，.json/.jsonl/.ndjson 視為 JSON Lines，其餘視為 CSV
+         */
+        public static Format fromFileName(String fileName) {
+            String name = fileName.toLowerCase(Locale.ROOT);
+            if (name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json")) {
+                return JSON_LINES;
+            }
+            return CSV;
+        }
+    }
+
+    private final DatabaseManager dbManager;
+    private final String username;
+    private final double heightCm;
+    private final int commitInterval;
+
+    private long linesRead;
+    private long rejected;
+    private long skipped;
+    private final List<String> errors = new ArrayList<>();
+
+    public HealthDataImporter(DatabaseManager dbManager, String username, double heightCm, int commitInterval) {
+        this.dbManager = dbManager;
+        this.username = username;
+        this.heightCm = heightCm;
+        this.commitInterval = commitInterval;
+    }
+
+    /**
+     * 匯入檔案，格式依副檔名判斷
+     */
+    public ImportResult importFile(Path file) throws IOException, SQLException {
+        return importFile(file, Format.fromFileName(file.getFileName().toString()));
+    }
+
+    /**
+     * 匯入檔案；每一行獨立驗證，不合格的行會被略過並計入拒絕筆數，只有每日習慣的行計入略過筆數
+     */
+    public ImportResult importFile(Path file, Format format) throws IOException, SQLException {
+        linesRead = 0;
+        rejected = 0;
+        skipped = 0;
+        errors.clear();
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            Stream<HealthData> records;
+            if (format == Format.CSV) {
+                String headerLine = reader.readLine();
+                if (headerLine == null) {
+                    return new ImportResult(0, 0, 0, 0, 0, Collections.emptyList());
+                }
+                linesRead++;
+                String[] header = splitCsv(headerLine);
+                for (int i = 0; i < header.length; i++) {
+                    header[i] = normalizeKey(header[i]);
+                }
+                records = reader.lines().map(line -> parseLine(line, csvRow(header, line)));
+            } else {
+                records = reader.lines().map(line -> parseLine(line, jsonRow(line)));
+            }
+
+            DatabaseManager.BulkInsertResult result = dbManager.bulkInsertHealthData(
+                    username, records.filter(Objects::nonNull), commitInterval);
+            return new ImportResult(linesRead, result.getRowsWritten(), rejected, skipped,
+                    result.getElapsedMillis(), new ArrayList<>(errors));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private HealthData parseLine(String line, Map<String, String> row) {
+        linesRead++;
+        if (line.trim().isEmpty()) {
+            return null;
+        }
+        if (row == null) {
+            reject("unreadable row");
+            return null;
+        }
+
+        LocalDate date = parseDate(row.get("date"));
+        if (date == null) {
+            reject("invalid or missing date '" + row.get("date") + "'");
+            return null;
+        }
+
+        // Absent fields are left unset so the upsert keeps whatever is already stored for that day
+        HealthData data = new HealthData();
+        data.setDate(date);
+        data.setSteps(-1);
+        boolean hasValue = false;
+
+        String weight = row.get("weight");
+        if (weight != null) {
+            if (!check(ValidationHelper.validateWeight(weight))) {
+                return null;
+            }
+            data.setWeight(Double.parseDouble(weight.trim()));
+            if (heightCm > 0) {
+                double heightInMeters = heightCm / 100;
+                data.setBmi(data.getWeight() / (heightInMeters * heightInMeters));
+            }
+            hasValue = true;
+        }
+
+        String steps = row.get("steps");
+        if (steps != null) {
+            if (!check(ValidationHelper.validateSteps(steps))) {
+                return null;
+            }
+            data.setSteps(Integer.parseInt(steps.trim()));
+            hasValue = true;
+        }
+
+        String bloodPressure = row.get("blood_pressure");
+        // Exports write blood pressure as separate systolic and diastolic columns
+        if (bloodPressure == null && row.get("systolic") != null && row.get("diastolic") != null) {
+            bloodPressure = row.get("systolic").trim() + "/" + row.get("diastolic").trim();
+        }
+        if (bloodPressure != null) {
+            if (!check(ValidationHelper.validateBloodPressure(bloodPressure.trim()))) {
+                return null;
+            }
+            data.setBloodPressure(bloodPressure.trim());
+            hasValue = true;
+        }
+
+        String heartRate = row.get("heart_rate");
+        if (heartRate != null) {
+            if (!check(ValidationHelper.validateHeartRate(heartRate))) {
+                return null;
+            }
+            data.setHeartRate(Integer.parseInt(heartRate.trim()));
+            hasValue = true;
+        }
+
+        if (!hasValue) {
+            // Exports also list days that only have daily habits; those are skipped rather than rejected
+            if (hasHabits(row)) {
+                skipped++;
+            } else {
+                reject("no readings");
+            }
+            return null;
+        }
+        return data;
+    }
+
+    private static boolean hasHabits(Map<String, String> row) {
+        for (String column : HABIT_COLUMNS) {
+            if (row.get(column) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean check(ValidationHelper.ValidationResult result) {
+        if (!result.isValid()) {
+            reject(result.getMessage());
+        }
+        return result.isValid();
+    }
+
+    private void reject(String reason) {
+        rejected++;
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add("line " + linesRead + ": " + reason);
+        }
+    }
+
+    private static LocalDate parseDate(String text) {
+        if (text == null) {
+            return null;
+        }
+        String value = text.trim();
+        // Accept ISO dates (as written by the exporter) and the app's own MM/dd/yyyy
+        String format = value.indexOf('/') >= 0 ? "MM/dd/yyyy" : "yyyy-MM-dd";
+        if (!ValidationHelper.validateDate(value, format).isValid()) {
+            return null;
+        }
+        try {
+            return value.indexOf('/') >= 0 ? LocalDate.parse(value, DISPLAY_DATE) : LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    // Maps common header spellings ("Heart Rate", "heartRate", "bp") onto column names
+    private static String normalizeKey(String key) {
+        String k = key.trim().toLowerCase(Locale.ROOT).replace(" ", "_").replace("-", "_");
+        switch (k) {
+            case "heartrate":
+            case "hr":
+                return "heart_rate";
+            case "bloodpressure":
+            case "bp":
+                return "blood_pressure";
+            case "day":
+                return "date";
+            default:
+                return k;
+        }
+    }
+
+    private static Map<String, String> csvRow(String[] header, String line) {
+        String[] values = splitCsv(line);
+        Map<String, String> row = new HashMap<>();
+        for (int i = 0; i < header.length && i < values.length; i++) {
+            if (!values[i].isEmpty()) {
+                row.put(header[i], values[i]);
+            }
+        }
+        return row;
+    }
+
+    // Quoted fields may contain commas, and "" inside them stands for one quote; whitespace around
+    // a field is trimmed, but the text between its quotes is kept as written
+    private static String[] splitCsv(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean inQuotes = false;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (inQuotes) {
+                if (c != '"') {
+                    value.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else {
+                    inQuotes = false;
+                }
+            } else if (c == ',') {
+                values.add(quoted ? value.toString() : value.toString().trim());
+                value.setLength(0);
+                quoted = false;
+            } else if (c == '"' && !quoted && value.toString().trim().isEmpty()) {
+                value.setLength(0);
+                inQuotes = true;
+                quoted = true;
+            } else if (!quoted || !Character.isWhitespace(c)) {
+                value.append(c);
+            }
+        }
+        values.add(quoted ? value.toString() : value.toString().trim());
+        return values.toArray(new String[0]);
+    }
+
+    // Parses one flat JSON object; nested objects and arrays are not part of the export format
+    private static Map<String, String> jsonRow(String line) {
+        String text = line.trim();
+        if (text.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        if (!text.startsWith("{") || !text.endsWith("}")) {
+            return null;
+        }
+
+        Map<String, String> row = new HashMap<>();
+        int pos = 1;
+        int end = text.length() - 1;
+        while (pos < end) {
+            pos = skipWhitespace(text, pos, end);
+            if (pos >= end) {
+                break;
+            }
+            if (text.charAt(pos) != '"') {
+                return null;
+            }
+            StringBuilder key = new StringBuilder();
+            pos = readString(text, pos, end, key);
+            pos = skipWhitespace(text, pos, end);
+            if (pos < 0 || pos >= end || text.charAt(pos) != ':') {
+                return null;
+            }
+            pos = skipWhitespace(text, pos + 1, end);
+            if (pos >= end) {
+                return null;
+            }
+
+            String value;
+            if (text.charAt(pos) == '"') {
+                StringBuilder sb = new StringBuilder();
+                pos = readString(text, pos, end, sb);
+                if (pos < 0) {
+                    return null;
+                }
+                value = sb.toString();
+            } else {
+                int start = pos;
+                while (pos < end && text.charAt(pos) != ',') {
+                    pos++;
+                }
+                value = text.substring(start, pos).trim();
+                if (value.equals("null")) {
+                    value = null;
+                }
+            }
+            if (value != null && !value.isEmpty()) {
+                row.put(normalizeKey(key.toString()), value);
+            }
+
+            pos = skipWhitespace(text, pos, end);
+            if (pos < end) {
+                if (text.charAt(pos) != ',') {
+                    return null;
+                }
+                pos++;
+            }
+        }
+        return row;
+    }
+
+    private static int skipWhitespace(String text, int pos, int end) {
+        if (pos < 0) {
+            return pos;
+        }
+        while (pos < end && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    // Reads a quoted string starting at pos; returns the index after the closing quote or -1
+    private static int readString(String text, int pos, int end, StringBuilder out) {
+        pos++;
+        while (pos < end) {
+            char c = text.charAt(pos);
+            if (c == '"') {
+                return pos + 1;
+            }
+            if (c == '\\' && pos + 1 < end) {
+                char next = text.charAt(++pos);
+                switch (next) {
+                    case 'n':
+                        out.append('\n');
+                        break;
+                    case 't':
+                        out.append('\t');
+                        break;
+                    case 'u':
+                        if (pos + 4 >= end) {
+                            return -1;
+                        }
+                        int code = 0;
+                        for (int i = pos + 1; i <= pos + 4; i++) {
+                            int digit = Character.digit(text.charAt(i), 16);
+                            if (digit < 0) {
+                                // A malformed escape makes the whole row unreadable
+                                return -1;
+                            }
+                            code = code * 16 + digit;
+                        }
+                        out.append((char) code);
+                        pos += 4;
+                        break;
+                    default:
+                        out.append(next);
+                }
+            } else {
+                out.append(c);
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    /**
+     * 匯入結果
+     */
+    public static class ImportResult {
+        private final long linesRead;
+        private final long rowsImported;
+        private final long rowsRejected;
+        private final long rowsSkipped;
+        private final long elapsedMillis;
+        private final List<String> errors;
+
+        public ImportResult(long linesRead, long rowsImported, long rowsRejected, long rowsSkipped,
+                long elapsedMillis, List<String> errors) {
+            this.linesRead = linesRead;
+            this.rowsImported = rowsImported;
+            this.rowsRejected = rowsRejected;
+            this.rowsSkipped = rowsSkipped;
+            this.elapsedMillis = elapsedMillis;
+            this.errors = errors;
+        }
+
+        public long getLinesRead() {
+            return linesRead;
+        }
+
+        public long getRowsImported() {
+            return rowsImported;
+        }
+
+        public long getRowsRejected() {
+            return rowsRejected;
+        }
+
+        /**
+         * 只有每日習慣、沒有健康數據而略過的列數
+         */
+        public long getRowsSkipped() {
+            return rowsSkipped;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedMillis > 0 ? rowsImported * 1000.0 / elapsedMillis : rowsImported;
+        }
+
+        /**
+         * 前幾筆被拒絕的原因，附行號
+         */
+        public List<String> getErrors() {
+            return errors;
+        }
+    }
+}
@@ -4,6 +4,8 @@ public class HealthGoals {
     private double targetWeight;
     private int targetSteps;
     private String targetBloodPressure;
+    private int targetWaterIntake;
+    private int targetSleepHours;
 
     public boolean checkGoalProgress(HealthData data) {
         return data.compareWithGoals(this);
@@ -33,4 +35,20 @@ public class HealthGoals {
     public void setTargetBloodPressure(String targetBloodPressure) {
         this.targetBloodPressure = targetBloodPressure;
     }
+
+    public int getTargetWaterIntake() {
+        return targetWaterIntake;
+    }
+
+    public void setTargetWaterIntake(int targetWaterIntake) {
+        this.targetWaterIntake = targetWaterIntake;
+    }
+
+    public int getTargetSleepHours() {
+        return targetSleepHours;
+    }
+
+    public void setTargetSleepHours(int targetSleepHours) {
+        this.targetSleepHours = targetSleepHours;
+    }
 }
\ No newline at end of file
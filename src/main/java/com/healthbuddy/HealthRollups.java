@@ -0,0 +1,329 @@
+package com.healthbuddy;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 健康資料彙總表類別
+ * health_rollups 以週、月為區間保存每個指標的筆數、最小值、最大值、總和與平方和；
+ * 長時間範圍的圖表只需讀取數十筆彙總，而不必掃描數千筆原始資料。
+ * 原始資料寫入後以 refresh 重新計算受影響的區間
+ */
+public final class HealthRollups {
+    // Every numeric health_data column
+    static final String[] METRICS = { "weight", "bmi", "steps", "heart_rate", "systolic", "diastolic" };
+
+    public enum Granularity {
+        // Weeks start on Monday; epoch day 0 (1970-01-01) was a Thursday
+        WEEK("week", "(date - ((date + 3) % 7 + 7) % 7)"),
+        MONTH("month", "(date - CAST(strftime('%d', date * 86400, 'unixepoch') AS INTEGER) + 1)");
+
+        private final String id;
+        private final String bucketSql;
+
+        Granularity(String id, String bucketSql) {
+            this.id = id;
+            this.bucketSql = bucketSql;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * 包含該日的區間的第一天
+         */
+        public int bucketStart(int epochDay) {
+            if (this == WEEK) {
+                return epochDay - Math.floorMod(epochDay + 3, 7);
+            }
+            return EpochDays.of(EpochDays.toLocalDate(epochDay).withDayOfMonth(1));
+        }
+
+        /**
+         * 包含該日的區間的最後一天
+         */
+        public int bucketEnd(int epochDay) {
+            if (this == WEEK) {
+                return bucketStart(epochDay) + 6;
+            }
+            LocalDate date = EpochDays.toLocalDate(epochDay);
+            return EpochDays.of(date.withDayOfMonth(date.lengthOfMonth()));
+        }
+    }
+
+    private HealthRollups() {
+    }
+
+    /**
+     * 依時間範圍選擇圖表使用的彙總粒度；三個月以內回傳 null，表示直接讀取原始資料
+     */
+    public static Granularity granularityFor(String timeRange) {
+        switch (timeRange) {
+            case "Last Year":
+                return Granularity.WEEK;
+            case "All Time":
+                return Granularity.MONTH;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 重新計算某位使用者在 [fromDay, toDay] 內有變動的所有週、月區間；
+     * 呼叫端負責交易，讓原始資料與彙總一起提交
+     */
+    static void refresh(Connection connection, String username, int fromDay, int toDay) throws SQLException {
+        StatementCache statements = StatementCache.forConnection(connection);
+        for (Granularity granularity : Granularity.values()) {
+            int firstBucket = granularity.bucketStart(fromDay);
+            int lastDay = granularity.bucketEnd(toDay);
+
+            PreparedStatement delete = statements.prepare("DELETE FROM health_rollups " +
+                    "WHERE username = ? AND granularity = ? AND bucket_start BETWEEN ? AND ?");
+            delete.setString(1, username);
+            delete.setString(2, granularity.id);
+            delete.setInt(3, firstBucket);
+            delete.setInt(4, lastDay);
+            delete.executeUpdate();
+
+            if (HealthArchive.hasData(username, firstBucket, lastDay)) {
+                refreshMerged(statements, username, granularity, firstBucket, lastDay);
+                continue;
+            }
+            PreparedStatement insert = statements.prepare(insertSql(granularity, METRICS, "username = ? AND date BETWEEN ? AND ?"));
+            int index = 1;
+            for (int i = 0; i < METRICS.length; i++) {
+                insert.setString(index++, username);
+                insert.setInt(index++, firstBucket);
+                insert.setInt(index++, lastDay);
+            }
+            insert.executeUpdate();
+        }
+    }
+
+    // The range reaches archived days: aggregate in Java over the live rows merged with the archive,
+    // the live row winning a day found in both
+    private static void refreshMerged(StatementCache statements, String username, Granularity granularity,
+            int fromDay, int toDay) throws SQLException {
+        PreparedStatement select = statements.prepare("SELECT date, weight, bmi, steps, heart_rate, systolic, " +
+                "diastolic FROM health_data WHERE username = ? AND date BETWEEN ? AND ? ORDER BY date ASC");
+        select.setString(1, username);
+        select.setInt(2, fromDay);
+        select.setInt(3, toDay);
+        PreparedStatement insert = statements.prepare("INSERT INTO health_rollups " +
+                "(username, granularity, bucket_start, metric, count, min_value, max_value, sum_value, sum_squares) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        BucketAggregate aggregate = new BucketAggregate(username, granularity, insert);
+        double[] values = new double[METRICS.length];
+
+        HealthArchive.Cursor archived = HealthArchive.cursor(username, fromDay, toDay);
+        boolean hasArchived = archived.next();
+        try (ResultSet rs = select.executeQuery()) {
+            while (rs.next()) {
+                int day = rs.getInt(1);
+                while (hasArchived && archived.day() <= day) {
+                    if (archived.day() < day) {
+                        aggregate.add(archived.day(), archivedValues(archived, values));
+                    }
+                    hasArchived = archived.next();
+                }
+                for (int i = 0; i < METRICS.length; i++) {
+                    double value = rs.getDouble(2 + i);
+                    values[i] = rs.wasNull() ? Double.NaN : value;
+                }
+                aggregate.add(day, values);
+            }
+        }
+        while (hasArchived) {
+            aggregate.add(archived.day(), archivedValues(archived, values));
+            hasArchived = archived.next();
+        }
+        aggregate.flush();
+    }
+
+    // Fills values in METRICS order; missing readings become NaN
+    private static double[] archivedValues(HealthArchive.Cursor archived, double[] values) {
+        values[0] = archived.weight();
+        values[1] = archived.bmi();
+        values[2] = intValue(archived.steps());
+        values[3] = intValue(archived.heartRate());
+        values[4] = intValue(archived.systolic());
+        values[5] = intValue(archived.diastolic());
+        return values;
+    }
+
+    private static double intValue(int value) {
+        return value == HealthSeriesStore.MISSING ? Double.NaN : value;
+    }
+
+    /**
+     * 由 health_data 重建所有使用者的彙總，供結構遷移使用；有封存資料的使用者改為合併封存後重新計算。
+     * 只彙總目前已存在的欄位，讓較早的遷移在後續欄位加入前也能執行
+     */
+    static void rebuild(Connection connection) throws SQLException {
+        List<String> present = new ArrayList<>();
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery("PRAGMA table_info(health_data)")) {
+            while (rs.next()) {
+                present.add(rs.getString("name"));
+            }
+        }
+        List<String> metrics = new ArrayList<>(Arrays.asList(METRICS));
+        metrics.retainAll(present);
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DELETE FROM health_rollups");
+            for (Granularity granularity : Granularity.values()) {
+                stmt.executeUpdate(insertSql(granularity, metrics.toArray(new String[0]), "1 = 1"));
+            }
+        }
+        // Archives only exist once every metric column does, which the merged aggregation reads
+        if (metrics.size() < METRICS.length) {
+            return;
+        }
+        List<String> archivedUsers = new ArrayList<>();
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT username FROM users")) {
+            while (rs.next()) {
+                String username = rs.getString(1);
+                if (HealthArchive.hasData(username, Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+                    archivedUsers.add(username);
+                }
+            }
+        }
+        StatementCache statements = StatementCache.forConnection(connection);
+        for (String username : archivedUsers) {
+            PreparedStatement delete = statements.prepare("DELETE FROM health_rollups WHERE username = ?");
+            delete.setString(1, username);
+            delete.executeUpdate();
+            for (Granularity granularity : Granularity.values()) {
+                refreshMerged(statements, username, granularity, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            }
+        }
+    }
+
+    /**
+     * 讀取 [fromDay, toDay] 內一或多個指標的彙總，依區間再依 columns 的順序排序
+     * 欄位為 bucket_start, metric, count, min_value, max_value, sum_value, sum_squares
+     */
+    static ResultSet query(Connection connection, String username, String[] columns, Granularity granularity,
+            int fromDay, int toDay) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT bucket_start, metric, count, min_value, max_value, sum_value, " +
+                "sum_squares FROM health_rollups WHERE username = ? AND granularity = ? AND bucket_start BETWEEN ? AND ? " +
+                "AND metric IN (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i > 0 ? ", ?" : "?");
+        }
+        // Ordered by primary key within each metric; the CASE keeps the caller's column order per bucket
+        sql.append(") ORDER BY bucket_start ASC, CASE metric");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(" WHEN ? THEN ").append(i);
+        }
+        sql.append(" END");
+
+        StatementCache statements = StatementCache.forConnection(connection);
+        PreparedStatement pstmt = statements.prepare(sql.toString());
+        pstmt.setString(1, username);
+        pstmt.setString(2, granularity.id);
+        pstmt.setInt(3, fromDay == Integer.MIN_VALUE ? fromDay : granularity.bucketStart(fromDay));
+        pstmt.setInt(4, toDay);
+        for (int i = 0; i < columns.length; i++) {
+            pstmt.setString(5 + i, columns[i]);
+            pstmt.setString(5 + columns.length + i, columns[i]);
+        }
+        return statements.executeQuery(pstmt);
+    }
+
+    // One aggregate per metric in a single statement; each branch repeats the filter's parameters
+    private static String insertSql(Granularity granularity, String[] metrics, String filter) {
+        StringBuilder sql = new StringBuilder("INSERT INTO health_rollups " +
+                "(username, granularity, bucket_start, metric, count, min_value, max_value, sum_value, sum_squares) ");
+        for (int i = 0; i < metrics.length; i++) {
+            String metric = metrics[i];
+            if (i > 0) {
+                sql.append(" UNION ALL ");
+            }
+            sql.append("SELECT username, '").append(granularity.id).append("', ")
+                    .append(granularity.bucketSql).append(", '").append(metric).append("', ")
+                    .append("COUNT(").append(metric).append("), MIN(").append(metric).append("), MAX(")
+                    .append(metric).append("), SUM(").append(metric).append("), SUM(CAST(").append(metric)
+                    .append(" AS REAL) * ").append(metric).append(") FROM health_data WHERE ").append(filter)
+                    .append(" AND ").append(metric).append(" IS NOT NULL GROUP BY username, ")
+                    .append(granularity.bucketSql);
+        }
+        return sql.toString();
+    }
+
+    /**
+     * 依日期遞增接收每日數值，區間結束時寫出該區間每個指標的彙總
+     */
+    private static final class BucketAggregate {
+        private final String username;
+        private final Granularity granularity;
+        private final PreparedStatement insert;
+        private final long[] count = new long[METRICS.length];
+        private final double[] min = new double[METRICS.length];
+        private final double[] max = new double[METRICS.length];
+        private final double[] sum = new double[METRICS.length];
+        private final double[] sumSquares = new double[METRICS.length];
+        private int bucketStart = Integer.MIN_VALUE;
+
+        BucketAggregate(String username, Granularity granularity, PreparedStatement insert) {
+            this.username = username;
+            this.granularity = granularity;
+            this.insert = insert;
+        }
+
+        void add(int epochDay, double[] values) throws SQLException {
+            int bucket = granularity.bucketStart(epochDay);
+            if (bucket != bucketStart) {
+                flush();
+                bucketStart = bucket;
+            }
+            for (int i = 0; i < values.length; i++) {
+                double value = values[i];
+                if (Double.isNaN(value)) {
+                    continue;
+                }
+                if (count[i] == 0 || value < min[i]) {
+                    min[i] = value;
+                }
+                if (count[i] == 0 || value > max[i]) {
+                    max[i] = value;
+                }
+                count[i]++;
+                sum[i] += value;
+                sumSquares[i] += value * value;
+            }
+        }
+
+        void flush() throws SQLException {
+            for (int i = 0; i < METRICS.length; i++) {
+                if (count[i] == 0) {
+                    continue;
+                }
+                insert.setString(1, username);
+                insert.setString(2, granularity.id);
+                insert.setInt(3, bucketStart);
+                insert.setString(4, METRICS[i]);
+                insert.setLong(5, count[i]);
+                insert.setDouble(6, min[i]);
+                insert.setDouble(7, max[i]);
+                insert.setDouble(8, sum[i]);
+                insert.setDouble(9, sumSquares[i]);
+                insert.executeUpdate();
+                count[i] = 0;
+                sum[i] = 0;
+                sumSquares[i] = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package com.healthbuddy;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 每位使用者的記憶體欄式時間序列
+ * 以依日期排序的基本型別陣列保存 health_data 與封存區段的每個指標，第一次使用時才載入；
+ * 之後的範圍查詢以二分搜尋找出陣列區段，不必再經過 SQL 與 ResultSet。
+ * 讀取端取得不可變的 Snapshot；DatabaseManager 寫入後呼叫 recordWrite 或 invalidate 保持同步
+ */
+public final class HealthSeriesStore {
+    // Stores kept in memory; the least recently used one is dropped beyond this count
+    private static final int MAX_USERS = Integer.getInteger("healthbuddy.series.maxUsers", 16);
+    // Marks a missing reading in the int columns; missing doubles are NaN
+    public static final int MISSING = Integer.MIN_VALUE;
+
+    private static final Map<String, HealthSeriesStore> stores = new ConcurrentHashMap<>();
+
+    public enum Column {
+        WEIGHT("weight"), BMI("bmi"), STEPS("steps"), SYSTOLIC("systolic"), DIASTOLIC("diastolic"),
+        HEART_RATE("heart_rate");
+
+        private final String columnName;
+
+        Column(String columnName) {
+            this.columnName = columnName;
+        }
+
+        public String getColumnName() {
+            return columnName;
+        }
+
+        /**
+         * 依 health_data 欄位名稱取得欄位，無法辨識時回傳 null
+         */
+        public static Column fromColumnName(String columnName) {
+            for (Column column : values()) {
+                if (column.columnName.equals(columnName)) {
+                    return column;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final String username;
+    // Null until first loaded; replaced, never modified, so readers need no lock
+    private volatile Snapshot snapshot;
+    private volatile long lastUsed;
+
+    private HealthSeriesStore(String username) {
+        this.username = username;
+    }
+
+    /**
+     * 取得使用者目前的資料，尚未載入時經由 dbManager 載入
+     */
+    public static Snapshot load(DatabaseManager dbManager, String username) throws SQLException {
+        HealthSeriesStore store = stores.computeIfAbsent(username, HealthSeriesStore::new);
+        store.lastUsed = System.nanoTime();
+        Snapshot current = store.snapshot;
+        if (current != null) {
+            return current;
+        }
+        // Loads and writes hold the same monitor, so a write cannot slip in between the query and the publish
+        synchronized (store) {
+            if (store.snapshot == null) {
+                store.snapshot = Snapshot.read(dbManager.getSeriesRows(username),
+                        HealthArchive.cursor(username, Integer.MIN_VALUE, Integer.MAX_VALUE));
+                evictIfNeeded();
+            }
+            return store.snapshot;
+        }
+    }
+
+    /**
+     * 單日資料寫入資料庫並提交後呼叫；尚未載入的使用者不受影響
+     */
+    static void recordWrite(String username, int epochDay, HealthData data) {
+        HealthSeriesStore store = stores.get(username);
+        if (store == null) {
+            return;
+        }
+        synchronized (store) {
+            if (store.snapshot != null) {
+                store.snapshot = store.snapshot.upsert(epochDay, data);
+            }
+        }
+    }
+
+    /**
+     * 丟棄使用者的資料，下次讀取時重新載入；大量匯入等一次改動許多天的寫入後呼叫
+     */
+    static void invalidate(String username) {
+        HealthSeriesStore store = stores.get(username);
+        if (store != null) {
+            synchronized (store) {
+                store.snapshot = null;
+            }
+        }
+    }
+
+    public static void clear() {
+        stores.clear();
+    }
+
+    private static void evictIfNeeded() {
+        while (stores.size() > MAX_USERS) {
+            HealthSeriesStore oldest = null;
+            for (HealthSeriesStore store : stores.values()) {
+                if (oldest == null || store.lastUsed < oldest.lastUsed) {
+                    oldest = store;
+                }
+            }
+            stores.remove(oldest.username, oldest);
+        }
+    }
+
+    /**
+     * 某一時間點的完整資料，不可變
+     * 所有陣列依日期遞增排序且長度相同，只使用前 size 個元素
+     */
+    public static final class Snapshot {
+        private final int size;
+        private final int[] days;
+        private final double[] weight;
+        private final double[] bmi;
+        private final int[] steps;
+        private final int[] systolic;
+        private final int[] diastolic;
+        private final int[] heartRate;
+        // Statistics of one column from a start day on, keyed by statisticsKey; built on first use
+        private final Map<Long, HealthStatistics.Accumulator> statistics = new ConcurrentHashMap<>();
+
+        private Snapshot(int size, int[] days, double[] weight, double[] bmi, int[] steps, int[] systolic,
+                int[] diastolic, int[] heartRate) {
+            this.size = size;
+            this.days = days;
+            this.weight = weight;
+            this.bmi = bmi;
+            this.steps = steps;
+            this.systolic = systolic;
+            this.diastolic = diastolic;
+            this.heartRate = heartRate;
+        }
+
+        // Rows must be ordered by date: date, weight, bmi, steps, systolic, diastolic, heart_rate.
+        // Archived days are merged in; a day in both places is taken from the database.
+        static Snapshot read(ResultSet rs, HealthArchive.Cursor archived) throws SQLException {
+            Builder builder = new Builder();
+            try {
+                boolean hasArchived = archived.next();
+                while (rs.next()) {
+                    int day = rs.getInt(1);
+                    while (hasArchived && archived.day() <= day) {
+                        if (archived.day() < day) {
+                            builder.append(archived.day(), archived.weight(), archived.bmi(), archived.steps(),
+                                    archived.systolic(), archived.diastolic(), archived.heartRate());
+                        }
+                        hasArchived = archived.next();
+                    }
+                    builder.append(day, readDouble(rs, 2), readDouble(rs, 3), readInt(rs, 4), readInt(rs, 5),
+                            readInt(rs, 6), readInt(rs, 7));
+                }
+                while (hasArchived) {
+                    builder.append(archived.day(), archived.weight(), archived.bmi(), archived.steps(),
+                            archived.systolic(), archived.diastolic(), archived.heartRate());
+                    hasArchived = archived.next();
+                }
+            } finally {
+                rs.close();
+            }
+            return builder.build();
+        }
+
+        private static double readDouble(ResultSet rs, int index) throws SQLException {
+            double value = rs.getDouble(index);
+            return rs.wasNull() ? Double.NaN : value;
+        }
+
+        private static int readInt(ResultSet rs, int index) throws SQLException {
+            int value = rs.getInt(index);
+            return rs.wasNull() ? MISSING : value;
+        }
+
+        // Copy-on-write; the row mirrors what saveHealthData stored for that day
+        Snapshot upsert(int epochDay, HealthData data) {
+            int index = lowerBound(epochDay);
+            boolean replace = index < size && days[index] == epochDay;
+            int newSize = replace ? size : size + 1;
+            int capacity = Math.max(newSize, 16);
+            Snapshot copy = new Snapshot(newSize, insertGap(days, index, replace, capacity),
+                    insertGap(weight, index, replace, capacity), insertGap(bmi, index, replace, capacity),
+                    insertGap(steps, index, replace, capacity), insertGap(systolic, index, replace, capacity),
+                    insertGap(diastolic, index, replace, capacity), insertGap(heartRate, index, replace, capacity));
+            copy.days[index] = epochDay;
+            copy.weight[index] = data.getWeight();
+            copy.bmi[index] = data.getBmi() > 0 ? data.getBmi() : Double.NaN;
+            copy.steps[index] = data.getSteps();
+            copy.systolic[index] = data.hasBloodPressure() ? data.getSystolic() : MISSING;
+            copy.diastolic[index] = data.hasBloodPressure() ? data.getDiastolic() : MISSING;
+            copy.heartRate[index] = data.getHeartRate();
+            // A reading after the last one extends the statistics in O(1); any other change rebuilds them on use
+            if (!replace && index == size) {
+                for (Map.Entry<Long, HealthStatistics.Accumulator> entry : statistics.entrySet()) {
+                    long key = entry.getKey();
+                    HealthStatistics.Accumulator extended = entry.getValue().copy();
+                    if (epochDay >= (int) (key >> 8)) {
+                        extended.add(epochDay, copy.value(Column.values()[(int) (key & 0xFF)], index));
+                    }
+                    copy.statistics.put(key, extended);
+                }
+            }
+            return copy;
+        }
+
+        private int[] insertGap(int[] source, int index, boolean replace, int capacity) {
+            int[] target = new int[capacity];
+            System.arraycopy(source, 0, target, 0, index);
+            int tail = replace ? index + 1 : index;
+            System.arraycopy(source, tail, target, index + 1, size - tail);
+            return target;
+        }
+
+        private double[] insertGap(double[] source, int index, boolean replace, int capacity) {
+            double[] target = new double[capacity];
+            System.arraycopy(source, 0, target, 0, index);
+            int tail = replace ? index + 1 : index;
+            System.arraycopy(source, tail, target, index + 1, size - tail);
+            return target;
+        }
+
+        private static final class Builder {
+            private int size;
+            private int[] days = new int[256];
+            private double[] weight = new double[256];
+            private double[] bmi = new double[256];
+            private int[] steps = new int[256];
+            private int[] systolic = new int[256];
+            private int[] diastolic = new int[256];
+            private int[] heartRate = new int[256];
+
+            void append(int day, double weightValue, double bmiValue, int stepsValue, int systolicValue,
+                    int diastolicValue, int heartRateValue) {
+                if (size == days.length) {
+                    int capacity = size * 2;
+                    days = Arrays.copyOf(days, capacity);
+                    weight = Arrays.copyOf(weight, capacity);
+                    bmi = Arrays.copyOf(bmi, capacity);
+                    steps = Arrays.copyOf(steps, capacity);
+                    systolic = Arrays.copyOf(systolic, capacity);
+                    diastolic = Arrays.copyOf(diastolic, capacity);
+                    heartRate = Arrays.copyOf(heartRate, capacity);
+                }
+                days[size] = day;
+                weight[size] = weightValue;
+                bmi[size] = bmiValue;
+                steps[size] = stepsValue;
+                systolic[size] = systolicValue;
+                diastolic[size] = diastolicValue;
+                heartRate[size] = heartRateValue;
+                size++;
+            }
+
+            Snapshot build() {
+                return new Snapshot(size, days, weight, bmi, steps, systolic, diastolic, heartRate);
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int day(int index) {
+            return days[index];
+        }
+
+        /**
+         * 第一個日期不早於 epochDay 的索引，全部都較早時回傳 size
+         */
+        public int lowerBound(int epochDay) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (days[mid] < epochDay) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * 第一個日期晚於 epochDay 的索引；[lowerBound(from), upperBound(to)) 即為 [from, to] 的資料
+         */
+        public int upperBound(int epochDay) {
+            return epochDay == Integer.MAX_VALUE ? size : lowerBound(epochDay + 1);
+        }
+
+        /**
+         * 指定索引的數值，未記錄時回傳 NaN
+         */
+        public double value(Column column, int index) {
+            switch (column) {
+                case WEIGHT:
+                    return weight[index];
+                case BMI:
+                    return bmi[index];
+                default:
+                    int value = intColumn(column)[index];
+                    return value == MISSING ? Double.NaN : value;
+            }
+        }
+
+        /**
+         * 某一欄從 fromDay 起所有數值的統計；同一範圍第一次使用時走訪一次，之後寫入今天的數值只需累加一筆。
+         * 回傳的是副本，可自由修改
+         */
+        public HealthStatistics.Accumulator statistics(Column column, int fromDay) {
+            long key = ((long) fromDay << 8) | column.ordinal();
+            HealthStatistics.Accumulator accumulator = statistics.computeIfAbsent(key, k -> {
+                HealthStatistics.Accumulator built = new HealthStatistics.Accumulator();
+                for (int i = lowerBound(fromDay); i < size; i++) {
+                    built.add(days[i], value(column, i));
+                }
+                return built;
+            });
+            return accumulator.copy();
+        }
+
+        public boolean has(Column column, int index) {
+            return !Double.isNaN(value(column, index));
+        }
+
+        private int[] intColumn(Column column) {
+            switch (column) {
+                case STEPS:
+                    return steps;
+                case SYSTOLIC:
+                    return systolic;
+                case DIASTOLIC:
+                    return diastolic;
+                default:
+                    return heartRate;
+            }
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.healthbuddy;
+
+/**
+ * 健康數據統計類別
+ * 在基本型別陣列上以單次走訪計算移動平均、指數加權平均、變異數 (Welford)、最小平方趨勢斜率與百分位數；
+ * 所有方法都不配置記憶體，輸出與暫存陣列由呼叫端提供。NaN 代表未記錄的數值，一律略過
+ */
+public final class HealthStatistics {
+    // Weight of the newest reading in the exponentially weighted mean
+    static final double EWMA_ALPHA = Double.parseDouble(System.getProperty("healthbuddy.stats.ewmaAlpha", "0.2"));
+
+    private HealthStatistics() {
+    }
+
+    /**
+     * 逐筆累加的統計狀態，每筆 O(1)；新的數值必須依 x 遞增加入，之後可隨時讀取結果。
+     * 加入今天的數值只需再呼叫一次 add，不必重新走訪歷史資料
+     */
+    public static final class Accumulator {
+        private final double alpha;
+        private long count;
+        private double meanX;
+        private double mean;
+        // Welford sums of squared deviations and the co-moment of x and y
+        private double m2X;
+        private double m2;
+        private double coMoment;
+        private double ewma;
+        private double first;
+        private double min;
+        private double max;
+
+        public Accumulator() {
+            this(EWMA_ALPHA);
+        }
+
+        public Accumulator(double alpha) {
+            this.alpha = alpha;
+        }
+
+        public Accumulator copy() {
+            Accumulator copy = new Accumulator(alpha);
+            copy.count = count;
+            copy.meanX = meanX;
+            copy.mean = mean;
+            copy.m2X = m2X;
+            copy.m2 = m2;
+            copy.coMoment = coMoment;
+            copy.ewma = ewma;
+            copy.first = first;
+            copy.min = min;
+            copy.max = max;
+            return copy;
+        }
+
+        /**
+         * 加入一筆數值，x 通常為 epoch day；y 為 NaN 時略過
+         */
+        public void add(double x, double y) {
+            if (Double.isNaN(y)) {
+                return;
+            }
+            count++;
+            double dx = x - meanX;
+            double dy = y - mean;
+            meanX += dx / count;
+            mean += dy / count;
+            m2X += dx * (x - meanX);
+            m2 += dy * (y - mean);
+            coMoment += dx * (y - mean);
+            if (count == 1) {
+                ewma = y;
+                first = y;
+                min = y;
+                max = y;
+            } else {
+                ewma += alpha * (y - ewma);
+                min = Math.min(min, y);
+                max = Math.max(max, y);
+            }
+        }
+
+        /**
+         * 合併另一段資料的統計 (Chan 等人的公式)；later 必須是緊接在這段之後的資料，指數加權平均才會正確
+         */
+        public void merge(Accumulator later) {
+            if (later.count == 0) {
+                return;
+            }
+            if (count == 0) {
+                count = later.count;
+                meanX = later.meanX;
+                mean = later.mean;
+                m2X = later.m2X;
+                m2 = later.m2;
+                coMoment = later.coMoment;
+                ewma = later.ewma;
+                first = later.first;
+                min = later.min;
+                max = later.max;
+                return;
+            }
+            long total = count + later.count;
+            double dx = later.meanX - meanX;
+            double dy = later.mean - mean;
+            double weight = (double) count * later.count / total;
+            m2X += later.m2X + dx * dx * weight;
+            m2 += later.m2 + dy * dy * weight;
+            coMoment += later.coMoment + dx * dy * weight;
+            meanX += dx * later.count / total;
+            mean += dy * later.count / total;
+            // The later run started its mean at its own first value; replay that start from this run's mean
+            ewma = later.ewma + Math.pow(1 - alpha, later.count) * (ewma - later.first);
+            min = Math.min(min, later.min);
+            max = Math.max(max, later.max);
+            count = total;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return count > 0 ? mean : Double.NaN;
+        }
+
+        /**
+         * 樣本變異數，少於兩筆時為 NaN
+         */
+        public double getVariance() {
+            return count > 1 ? m2 / (count - 1) : Double.NaN;
+        }
+
+        public double getStandardDeviation() {
+            return Math.sqrt(getVariance());
+        }
+
+        /**
+         * 最小平方法迴歸線每單位 x 的變化量，所有 x 相同時為 NaN
+         */
+        public double getSlope() {
+            return m2X > 0 ? coMoment / m2X : Double.NaN;
+        }
+
+        /**
+         * 迴歸線在 x 的值
+         */
+        public double trendAt(double x) {
+            return getMean() + getSlope() * (x - meanX);
+        }
+
+        public double getEwma() {
+            return count > 0 ? ewma : Double.NaN;
+        }
+
+        public double getMin() {
+            return count > 0 ? min : Double.NaN;
+        }
+
+        public double getMax() {
+            return count > 0 ? max : Double.NaN;
+        }
+    }
+
+    /**
+     * 將 [from, to) 加入 accumulator
+     */
+    public static void accumulate(double[] x, double[] y, int from, int to, Accumulator accumulator) {
+        for (int i = from; i < to; i++) {
+            accumulator.add(x[i], y[i]);
+        }
+    }
+
+    /**
+     * 時間視窗移動平均：out[i] 為 x 落在 (x[i] - window, x[i]] 內的數值平均，視窗內沒有數值時為 NaN。
+     * 兩個指標各走一次，與視窗大小無關
+     */
+    public static void rollingMean(double[] x, double[] y, int from, int to, double window, double[] out) {
+        double sum = 0;
+        int count = 0;
+        int tail = from;
+        for (int i = from; i < to; i++) {
+            if (!Double.isNaN(y[i])) {
+                sum += y[i];
+                count++;
+            }
+            while (x[tail] <= x[i] - window) {
+                if (!Double.isNaN(y[tail])) {
+                    sum -= y[tail];
+                    count--;
+                }
+                tail++;
+            }
+            out[i] = count > 0 ? sum / count : Double.NaN;
+        }
+    }
+
+    /**
+     * 指數加權平均：out[i] 包含 [from, i] 的所有數值，最新的一筆權重為 alpha
+     */
+    public static void ewma(double[] y, int from, int to, double alpha, double[] out) {
+        double mean = Double.NaN;
+        for (int i = from; i < to; i++) {
+            if (!Double.isNaN(y[i])) {
+                mean = Double.isNaN(mean) ? y[i] : mean + alpha * (y[i] - mean);
+            }
+            out[i] = mean;
+        }
+    }
+
+    /**
+     * [from, to) 的第 p 百分位數 (0 到 1，兩個順位之間線性內插)，沒有數值時為 NaN。
+     * 數值先複製到 scratch 再以 quickselect 選出，平均 O(n)；scratch 長度至少為 to - from，內容會被覆寫
+     */
+    public static double percentile(double[] y, int from, int to, double p, double[] scratch) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (!Double.isNaN(y[i])) {
+                scratch[count++] = y[i];
+            }
+        }
+        return selectPercentile(scratch, count, p);
+    }
+
+    /**
+     * 與 percentile 相同，但直接在 values 的前 count 個元素上選取，會改變其順序；
+     * 同一組數值要取多個百分位數時，只需複製一次
+     */
+    public static double selectPercentile(double[] values, int count, double p) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        double position = Math.max(0, Math.min(1, p)) * (count - 1);
+        int lower = (int) position;
+        double low = select(values, count, lower);
+        if (lower + 1 >= count) {
+            return low;
+        }
+        // After the selection everything right of lower is at least as large; the next rank is their minimum
+        double high = values[lower + 1];
+        for (int i = lower + 2; i < count; i++) {
+            high = Math.min(high, values[i]);
+        }
+        return low + (high - low) * (position - lower);
+    }
+
+    // Hoare-style quickselect with a median-of-three pivot; leaves the k-th smallest at index k
+    private static double select(double[] values, int count, int k) {
+        int left = 0;
+        int right = count - 1;
+        while (right > left) {
+            int mid = (left + right) >>> 1;
+            if (values[mid] < values[left]) {
+                swap(values, mid, left);
+            }
+            if (values[right] < values[left]) {
+                swap(values, right, left);
+            }
+            if (values[right] < values[mid]) {
+                swap(values, right, mid);
+            }
+            double pivot = values[mid];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(values, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+        return values[k];
+    }
+
+    private static void swap(double[] values, int a, int b) {
+        double temp = values[a];
+        values[a] = values[b];
+        values[b] = temp;
+    }
+}
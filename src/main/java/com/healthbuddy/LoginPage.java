@@ -2,25 +2,17 @@ package com.healthbuddy;
 
 import javax.swing.*;
 import java.awt.*;
-
-import java.sql.*;
+import java.util.Arrays;
 
 public class LoginPage extends JFrame {
     private JTextField usernameField;
     private JPasswordField passwordField;
-    private DatabaseManager dbManager;
+    private JButton loginButton;
     private Color primaryColor = new Color(100, 149, 237); // Cornflower blue
     private Color backgroundColor = new Color(240, 248, 255); // Alice blue
 
     public LoginPage() {
-        dbManager = new DatabaseManager();
         setupUI();
-        try {
-            dbManager.connect();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Database connection failed!");
-        }
     }
 
     private void setupUI() {
@@ -106,7 +98,7 @@ public class LoginPage extends JFrame {
         buttonPanel.setOpaque(false);
         buttonPanel.setLayout(new FlowLayout(FlowLayout.CENTER, 20, 10));
 
-        JButton loginButton = createStyledButton("Login");
+        loginButton = createStyledButton("Login");
         loginButton.addActionListener(e -> authenticateUser());
 
         JButton signUpButton = createStyledButton("Sign Up");
@@ -168,9 +160,9 @@ public class LoginPage extends JFrame {
 
     private void authenticateUser() {
         String username = usernameField.getText();
-        String password = new String(passwordField.getPassword());
+        char[] password = passwordField.getPassword();
 
-        if (username.isEmpty() || password.isEmpty()) {
+        if (username.isEmpty() || password.length == 0) {
             JOptionPane.showMessageDialog(this,
                     "Please enter both username and password",
                     "Login Error",
@@ -178,37 +170,71 @@ public class LoginPage extends JFrame {
             return;
         }
 
-        try {
-            if (validateCredentials(username, password)) {
-                User user = new User(username, password);
-                openHomePage(user);
-            } else {
-                JOptionPane.showMessageDialog(this,
-                        "Invalid username or password. Please sign up if you don't have an account.",
-                        "Login Error",
-                        JOptionPane.ERROR_MESSAGE);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+        long waitMillis = LoginThrottle.tryAcquire(username);
+        if (waitMillis > 0) {
+            Arrays.fill(password, '\0');
             JOptionPane.showMessageDialog(this,
-                    "Database error occurred",
-                    "Error",
+                    String.format("Too many login attempts. Please try again in %d seconds.",
+                            (waitMillis + 999) / 1000),
+                    "Login Error",
                     JOptionPane.ERROR_MESSAGE);
+            return;
         }
+        // Accounts recently found not to exist skip the query, but still pay for a hash so the
+        // response time matches a wrong password
+        boolean knownUnknown = LoginThrottle.isUnknownUser(username);
+
+        // Password hashing and the lookup run on a worker so the window stays responsive
+        loginButton.setEnabled(false);
+        AsyncDataAccess.submit(this,
+                db -> {
+                    try {
+                        if (knownUnknown) {
+                            PasswordSecurity.verifyDummyPassword(password);
+                            return DatabaseManager.LoginResult.UNKNOWN_USER;
+                        }
+                        return db.authenticate(username, password);
+                    } finally {
+                        Arrays.fill(password, '\0');
+                    }
+                },
+                result -> {
+                    loginButton.setEnabled(true);
+                    switch (result) {
+                        case SUCCESS:
+                            LoginThrottle.recordSuccess(username);
+                            openHomePage(new User(username, ""));
+                            // When enabled, old readings move to the archive in the background; errors are only logged
+                            if (HealthArchive.isEnabled()) {
+                                AsyncDataAccess.submit(null, db -> HealthArchive.archiveOldReadings(db, username),
+                                        null, null);
+                            }
+                            break;
+                        case UNKNOWN_USER:
+                            LoginThrottle.rememberUnknownUser(username);
+                            LoginThrottle.recordFailure(username);
+                            showInvalidLogin();
+                            break;
+                        default:
+                            LoginThrottle.recordFailure(username);
+                            showInvalidLogin();
+                    }
+                },
+                e -> {
+                    loginButton.setEnabled(true);
+                    e.printStackTrace();
+                    JOptionPane.showMessageDialog(this,
+                            "Database error occurred",
+                            "Error",
+                            JOptionPane.ERROR_MESSAGE);
+                });
     }
 
-    private boolean validateCredentials(String username, String password) throws SQLException {
-        String sql = "SELECT password, salt FROM users WHERE username = ?";
-        try (PreparedStatement pstmt = dbManager.getConnection().prepareStatement(sql)) {
-            pstmt.setString(1, username);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                String storedPassword = rs.getString("password");
-                String salt = rs.getString("salt");
-                return PasswordSecurity.verifyPassword(password, storedPassword, salt);
-            }
-        }
-        return false;
+    private void showInvalidLogin() {
+        JOptionPane.showMessageDialog(this,
+                "Invalid username or password. Please sign up if you don't have an account.",
+                "Login Error",
+                JOptionPane.ERROR_MESSAGE);
     }
 
     private void redirectToSignUp() {
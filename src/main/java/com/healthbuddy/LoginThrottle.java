@@ -0,0 +1,139 @@
+package com.healthbuddy;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 登入節流類別
+ * 每個帳號一個令牌桶，連續失敗時以指數退避延長鎖定時間；
+ * 並短暫記住不存在的帳號，讓針對不存在帳號的大量嘗試不必查詢資料庫
+ */
+public final class LoginThrottle {
+    private static final int BURST = Integer.getInteger("healthbuddy.login.burst", 5);
+    // One attempt regained every REFILL_MS, up to BURST
+    private static final long REFILL_MS = Long.getLong("healthbuddy.login.refillMs", 30_000L);
+    // Failures allowed before backoff starts; each further failure doubles the lockout
+    private static final int FREE_FAILURES = 3;
+    private static final long BASE_BACKOFF_MS = 1_000L;
+    private static final long MAX_BACKOFF_MS = Long.getLong("healthbuddy.login.maxBackoffMs", 300_000L);
+    private static final long UNKNOWN_USER_TTL_MS = Long.getLong("healthbuddy.login.unknownUserTtlMs", 60_000L);
+    // Bounds memory under a burst of random usernames; idle entries are swept past this size
+    private static final int MAX_ENTRIES = 10_000;
+
+    private static final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private static final Map<String, Long> unknownUsers = new ConcurrentHashMap<>();
+
+    private LoginThrottle() {
+    }
+
+    /**
+     * 嘗試取得一次登入機會
+     *
+     * @return 0 表示可以嘗試；否則為需要等待的毫秒數
+     */
+    public static long tryAcquire(String username) {
+        long now = System.currentTimeMillis();
+        if (buckets.size() > MAX_ENTRIES) {
+            sweep(now);
+        }
+        Bucket bucket = buckets.computeIfAbsent(username, key -> new Bucket(now));
+        synchronized (bucket) {
+            return bucket.tryAcquire(now);
+        }
+    }
+
+    public static void recordSuccess(String username) {
+        buckets.remove(username);
+    }
+
+    public static void recordFailure(String username) {
+        long now = System.currentTimeMillis();
+        Bucket bucket = buckets.computeIfAbsent(username, key -> new Bucket(now));
+        synchronized (bucket) {
+            bucket.recordFailure(now);
+        }
+    }
+
+    /**
+     * 最近查詢過且不存在的帳號，在 TTL 內回傳 true
+     */
+    public static boolean isUnknownUser(String username) {
+        Long expiresAt = unknownUsers.get(username);
+        if (expiresAt == null) {
+            return false;
+        }
+        if (expiresAt < System.currentTimeMillis()) {
+            unknownUsers.remove(username, expiresAt);
+            return false;
+        }
+        return true;
+    }
+
+    public static void rememberUnknownUser(String username) {
+        long now = System.currentTimeMillis();
+        if (unknownUsers.size() > MAX_ENTRIES) {
+            unknownUsers.values().removeIf(expiresAt -> expiresAt < now);
+        }
+        unknownUsers.put(username, now + UNKNOWN_USER_TTL_MS);
+    }
+
+    /**
+     * 帳號建立後必須呼叫，否則剛註冊的帳號在 TTL 內會被當成不存在
+     */
+    public static void forgetUnknownUser(String username) {
+        unknownUsers.remove(username);
+    }
+
+    private static void sweep(long now) {
+        buckets.entrySet().removeIf(entry -> {
+            Bucket bucket = entry.getValue();
+            synchronized (bucket) {
+                return bucket.isIdle(now);
+            }
+        });
+        unknownUsers.values().removeIf(expiresAt -> expiresAt < now);
+    }
+
+    // Guarded by its own monitor
+    private static class Bucket {
+        private double tokens = BURST;
+        private long lastRefill;
+        private int failures;
+        private long lockedUntil;
+
+        Bucket(long now) {
+            this.lastRefill = now;
+        }
+
+        long tryAcquire(long now) {
+            if (now < lockedUntil) {
+                return lockedUntil - now;
+            }
+            refill(now);
+            if (tokens < 1) {
+                return (long) Math.ceil((1 - tokens) * REFILL_MS);
+            }
+            tokens -= 1;
+            return 0;
+        }
+
+        void recordFailure(long now) {
+            failures++;
+            if (failures > FREE_FAILURES) {
+                int exponent = Math.min(failures - FREE_FAILURES - 1, 20);
+                lockedUntil = now + Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << exponent);
+            }
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(BURST, tokens + (now - lastRefill) / (double) REFILL_MS);
+            lastRefill = now;
+        }
+
+        // Full bucket, no lockout in force and no failure streak worth keeping
+        boolean isIdle(long now) {
+            refill(now);
+            return tokens >= BURST && now >= lockedUntil && (failures == 0 || now - lockedUntil > MAX_BACKOFF_MS);
+        }
+    }
+}
@@ -2,9 +2,14 @@ package com.healthbuddy;
 
 import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
+import java.nio.file.Paths;
 
 public class Main {
     public static void main(String[] args) {
+        // Headless cohort report: --report [output.csv]
+        if (args.length > 0 && args[0].equals("--report")) {
+            System.exit(CohortReport.run(Paths.get(args.length > 1 ? args[1] : "cohort_report.csv")));
+        }
         SwingUtilities.invokeLater(() -> {
             UIConfig.setupUIDefaults(); // Add this line
             try {
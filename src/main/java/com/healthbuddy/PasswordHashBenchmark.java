@@ -0,0 +1,152 @@
+package com.healthbuddy;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 密碼哈希成本校準工具
+ * 量測每次哈希所需時間，找出符合目標登入延遲的迭代次數，並量測每核心每秒可驗證的登入數；
+ * 可直接執行：java -cp ... com.healthbuddy.PasswordHashBenchmark [目標毫秒] [吞吐量量測秒數]
+ */
+public class PasswordHashBenchmark {
+    private static final int DEFAULT_TARGET_MILLIS = 250;
+    private static final int[] REPORTED_COSTS = { 10_000, 100_000, 310_000, 600_000 };
+    private static final int CALIBRATION_ROUNDS = 5;
+    private static final long MAX_WARMUP_MILLIS = 10_000;
+    private static final long MIN_SAMPLE_MILLIS = 200;
+    private static final int DEFAULT_THROUGHPUT_SECONDS = 5;
+    private static final char[] SAMPLE_PASSWORD = "Benchmark#Passw0rd".toCharArray();
+
+    /**
+     * 找出讓一次哈希約花費 targetMillis 的迭代次數，結果取整到千位且不低於最小值
+     */
+    public static int calibrate(PasswordHashAlgorithm algorithm, long targetMillis) {
+        String salt = PasswordSecurity.generateSalt();
+        warmUp(algorithm, salt);
+
+        int cost = PasswordSecurity.MIN_ITERATIONS;
+        for (int round = 0; round < CALIBRATION_ROUNDS; round++) {
+            double millis = measureMillis(algorithm, salt, cost, 1);
+            // Cost is linear in the iteration count, so scale straight to the target
+            int next = (int) Math.min(Integer.MAX_VALUE, Math.round(cost * (targetMillis / Math.max(millis, 0.01))));
+            next = Math.max(PasswordSecurity.MIN_ITERATIONS, next / 1000 * 1000);
+            if (Math.abs(next - cost) <= cost / 20) {
+                return next;
+            }
+            cost = next;
+        }
+        return cost;
+    }
+
+    // Runs the hash until its timing settles, so measurements are not dominated by interpretation
+    // or by JIT compilation competing for the same core
+    private static void warmUp(PasswordHashAlgorithm algorithm, String salt) {
+        long deadline = System.nanoTime() + MAX_WARMUP_MILLIS * 1_000_000;
+        double previous = Double.MAX_VALUE;
+        while (System.nanoTime() < deadline) {
+            double millis = measureMillis(algorithm, salt, PasswordSecurity.MIN_ITERATIONS, 1);
+            if (Math.abs(previous - millis) <= previous / 10) {
+                return;
+            }
+            previous = millis;
+        }
+    }
+
+    /**
+     * 平均每次哈希的毫秒數；至少執行 samples 次，且總時間不少於 MIN_SAMPLE_MILLIS
+     */
+    static double measureMillis(PasswordHashAlgorithm algorithm, String salt, int cost, int samples) {
+        long start = System.nanoTime();
+        long minEnd = start + MIN_SAMPLE_MILLIS * 1_000_000;
+        int count = 0;
+        while (count < samples || System.nanoTime() < minEnd) {
+            PasswordSecurity.hashPassword(SAMPLE_PASSWORD, salt, algorithm, cost);
+            count++;
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / count;
+    }
+
+    /**
+     * 以 threads 個執行緒同時驗證同一組密碼 durationMillis 毫秒，回傳每秒成功驗證的次數
+     */
+    static double measureLoginsPerSecond(int cost, int threads, long durationMillis) throws InterruptedException {
+        String salt = PasswordSecurity.generateSalt();
+        String stored = PasswordSecurity.hashPassword(SAMPLE_PASSWORD, salt, PasswordHashAlgorithm.PBKDF2_SHA256,
+                cost);
+        AtomicLong logins = new AtomicLong();
+        long deadline = System.nanoTime() + durationMillis * 1_000_000;
+
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                long count = 0;
+                while (System.nanoTime() < deadline) {
+                    if (PasswordSecurity.verifyPassword(SAMPLE_PASSWORD, stored, salt)) {
+                        count++;
+                    }
+                }
+                logins.addAndGet(count);
+            }, "login-benchmark-" + i);
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return logins.get() * 1000.0 / durationMillis;
+    }
+
+    /**
+     * 單次驗證在目前執行緒上配置的位元組數，JVM 不支援量測時回傳 -1
+     */
+    static long measureBytesPerLogin(int cost, int samples) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+        String salt = PasswordSecurity.generateSalt();
+        String stored = PasswordSecurity.hashPassword(SAMPLE_PASSWORD, salt, PasswordHashAlgorithm.PBKDF2_SHA256,
+                cost);
+        PasswordSecurity.verifyPassword(SAMPLE_PASSWORD, stored, salt);
+
+        long threadId = Thread.currentThread().getId();
+        long before = allocation.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < samples; i++) {
+            PasswordSecurity.verifyPassword(SAMPLE_PASSWORD, stored, salt);
+        }
+        return (allocation.getThreadAllocatedBytes(threadId) - before) / samples;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        long targetMillis = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_TARGET_MILLIS;
+        int throughputSeconds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_THROUGHPUT_SECONDS;
+        PasswordHashAlgorithm algorithm = PasswordHashAlgorithm.PBKDF2_SHA256;
+        String salt = PasswordSecurity.generateSalt();
+        warmUp(algorithm, salt);
+
+        System.out.println(String.format("%-16s %12s %14s", "algorithm", "iterations", "ms per hash"));
+        System.out.println(String.format("%-16s %12d %14.3f", PasswordHashAlgorithm.SHA256_LEGACY.getId(), 1,
+                measureMillis(PasswordHashAlgorithm.SHA256_LEGACY, salt, 1, 1000)));
+        for (int cost : REPORTED_COSTS) {
+            System.out.println(String.format("%-16s %12d %14.1f", algorithm.getId(), cost,
+                    measureMillis(algorithm, salt, cost, 1)));
+        }
+
+        int calibrated = calibrate(algorithm, targetMillis);
+        System.out.println();
+        System.out.println(String.format("Target %d ms per login: -Dhealthbuddy.password.iterations=%d",
+                targetMillis, calibrated));
+
+        // Throughput at the cost the application currently uses, across every core
+        int cost = PasswordSecurity.getIterations();
+        int cores = Runtime.getRuntime().availableProcessors();
+        double loginsPerSecond = measureLoginsPerSecond(cost, cores, throughputSeconds * 1000L);
+        System.out.println(String.format("Verification at %d iterations on %d cores: %.1f logins/s, %.1f logins/s/core",
+                cost, cores, loginsPerSecond, loginsPerSecond / cores));
+        long bytes = measureBytesPerLogin(cost, 10);
+        if (bytes >= 0) {
+            System.out.println(String.format("Allocated per verification: %d bytes", bytes));
+        }
+    }
+}
@@ -1,50 +1,183 @@
 package com.healthbuddy;
 
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Base64;
 
 /**
  * 密碼安全處理類別
- * 提供密碼哈希、驗證和鹽值生成功能
+ * 提供密碼哈希、驗證和鹽值生成功能；
+ * 新的哈希使用 PBKDF2，迭代次數可由 healthbuddy.password.iterations 指定，
+ * 或由 healthbuddy.password.targetMillis 在啟動時依目標登入延遲校準
  */
 public class PasswordSecurity {
-    private static final String ALGORITHM = "SHA-256";
     private static final int SALT_LENGTH = 16;
-    
+    private static final PasswordHashAlgorithm DEFAULT_ALGORITHM = PasswordHashAlgorithm.PBKDF2_SHA256;
+    static final int DEFAULT_ITERATIONS = 310_000;
+    static final int MIN_ITERATIONS = 10_000;
+    private static final String SEPARATOR = "$";
+
+    // SecureRandom seeding is expensive, so each thread keeps one instead of creating it per salt
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+
+    private static volatile int iterations;
+    // Stored value checked when the account does not exist; created on first use at the current cost
+    private static volatile String[] dummyHash;
+
     /**
      * 生成隨機鹽值
      */
     public static String generateSalt() {
-        SecureRandom random = new SecureRandom();
         byte[] salt = new byte[SALT_LENGTH];
-        random.nextBytes(salt);
+        RANDOM.get().nextBytes(salt);
         return Base64.getEncoder().encodeToString(salt);
     }
-    
+
     /**
-     * 將密碼與鹽值進行哈希處理
+     * 將密碼與鹽值進行哈希處理，使用目前的預設演算法與成本
+     *
+     * @return 包含演算法與成本的儲存格式，例如 pbkdf2-sha256$310000$...
      */
     public static String hashPassword(String password, String salt) {
-        try {
-            MessageDigest md = MessageDigest.getInstance(ALGORITHM);
-            md.update(Base64.getDecoder().decode(salt));
-            byte[] hashedPassword = md.digest(password.getBytes());
-            return Base64.getEncoder().encodeToString(hashedPassword);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("密碼哈希處理失敗", e);
+        return hashPassword(password.toCharArray(), salt);
+    }
+
+    public static String hashPassword(char[] password, String salt) {
+        return hashPassword(password, salt, DEFAULT_ALGORITHM, getIterations());
+    }
+
+    static String hashPassword(char[] password, String salt, PasswordHashAlgorithm algorithm, int cost) {
+        byte[] hash = derive(algorithm, password, salt, cost);
+        String encoded = Base64.getEncoder().encodeToString(hash);
+        if (algorithm == PasswordHashAlgorithm.SHA256_LEGACY) {
+            return encoded;
         }
+        return algorithm.getId() + SEPARATOR + cost + SEPARATOR + encoded;
     }
-    
+
     /**
-     * 驗證密碼是否正確
+     * 驗證密碼是否正確，依儲存值記錄的演算法與成本重新計算
      */
     public static boolean verifyPassword(String password, String hashedPassword, String salt) {
-        String hashedInput = hashPassword(password, salt);
-        return hashedInput.equals(hashedPassword);
+        return verifyPassword(password.toCharArray(), hashedPassword, salt);
     }
-    
+
+    /**
+     * 以字元陣列驗證密碼，呼叫端可在驗證後清除陣列內容；
+     * 儲存的哈希只解碼一次，並以固定時間的位元組比較避免時間差洩漏
+     */
+    public static boolean verifyPassword(char[] password, String hashedPassword, String salt) {
+        StoredHash stored = StoredHash.parse(hashedPassword);
+        if (stored == null) {
+            return false;
+        }
+        byte[] hashedInput = derive(stored.algorithm, password, salt, stored.cost);
+        return MessageDigest.isEqual(hashedInput, stored.hash);
+    }
+
+    /**
+     * 帳號不存在時呼叫：以目前的演算法與成本驗證一個固定的哈希，讓回應時間與密碼錯誤相同，
+     * 無法藉由時間差判斷帳號是否存在
+     *
+     * @return 一律為 false
+     */
+    public static boolean verifyDummyPassword(char[] password) {
+        String[] dummy = dummyHash;
+        if (dummy == null) {
+            String salt = generateSalt();
+            dummy = new String[] { hashPassword(generateSalt(), salt), salt };
+            dummyHash = dummy;
+        }
+        verifyPassword(password, dummy[0], dummy[1]);
+        return false;
+    }
+
+    /**
+     * 儲存值是否使用舊演算法或低於目前設定的成本，驗證成功後應以新格式重新哈希
+     */
+    public static boolean needsRehash(String hashedPassword) {
+        StoredHash stored = StoredHash.parse(hashedPassword);
+        return stored == null || stored.algorithm != DEFAULT_ALGORITHM || stored.cost < getIterations();
+    }
+
+    /**
+     * 目前用於新哈希的迭代次數，第一次呼叫時決定
+     */
+    public static int getIterations() {
+        int n = iterations;
+        if (n == 0) {
+            synchronized (PasswordSecurity.class) {
+                if (iterations == 0) {
+                    iterations = resolveIterations();
+                }
+                n = iterations;
+            }
+        }
+        return n;
+    }
+
+    private static int resolveIterations() {
+        Integer configured = Integer.getInteger("healthbuddy.password.iterations");
+        if (configured != null) {
+            return Math.max(configured, MIN_ITERATIONS);
+        }
+        Integer targetMillis = Integer.getInteger("healthbuddy.password.targetMillis");
+        if (targetMillis != null) {
+            int calibrated = PasswordHashBenchmark.calibrate(DEFAULT_ALGORITHM, targetMillis);
+            System.out.println(String.format("Calibrated password hashing to %d iterations for %d ms",
+                    calibrated, targetMillis));
+            return calibrated;
+        }
+        return DEFAULT_ITERATIONS;
+    }
+
+    private static byte[] derive(PasswordHashAlgorithm algorithm, char[] password, String salt, int cost) {
+        try {
+            return algorithm.derive(password, Base64.getDecoder().decode(salt), cost);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("密碼哈希處理失敗", e);
+        }
+    }
+
+    // A stored value split into its parts, with the hash already decoded; legacy values carry no prefix
+    private static class StoredHash {
+        private final PasswordHashAlgorithm algorithm;
+        private final int cost;
+        private final byte[] hash;
+
+        StoredHash(PasswordHashAlgorithm algorithm, int cost, byte[] hash) {
+            this.algorithm = algorithm;
+            this.cost = cost;
+            this.hash = hash;
+        }
+
+        static StoredHash parse(String stored) {
+            if (stored == null) {
+                return null;
+            }
+            try {
+                int first = stored.indexOf(SEPARATOR);
+                if (first < 0) {
+                    return new StoredHash(PasswordHashAlgorithm.SHA256_LEGACY, 1, Base64.getDecoder().decode(stored));
+                }
+                int second = stored.indexOf(SEPARATOR, first + 1);
+                if (second < 0) {
+                    return null;
+                }
+                PasswordHashAlgorithm algorithm = PasswordHashAlgorithm.fromId(stored.substring(0, first));
+                int cost = Integer.parseInt(stored, first + 1, second, 10);
+                if (algorithm == null || cost <= 0) {
+                    return null;
+                }
+                return new StoredHash(algorithm, cost, Base64.getDecoder().decode(stored.substring(second + 1)));
+            } catch (IllegalArgumentException e) {
+                // Covers both a malformed cost and invalid Base64
+                return null;
+            }
+        }
+    }
+
     /**
      * 檢查密碼強度
      */
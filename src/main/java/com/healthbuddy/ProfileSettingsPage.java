@@ -2,8 +2,6 @@ package com.healthbuddy;
 
 import javax.swing.*;
 import java.awt.*;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
 
 public class ProfileSettingsPage extends JFrame {
     private User user;
@@ -118,63 +116,52 @@ public class ProfileSettingsPage extends JFrame {
     }
 
     private void loadProfileData() {
-        try {
-            DatabaseManager dbManager = new DatabaseManager();
-            dbManager.connect();
-
-            User loadedUser = dbManager.getUser(user.getUsername());
-            if (loadedUser != null) {
-                ProfileData profile = loadedUser.getProfile();
-                nameField.setText(profile.getName());
-                ageField.setText(String.valueOf(profile.getAge()));
-                genderComboBox.setSelectedItem(profile.getGender());
-                heightField.setText(String.valueOf(profile.getHeight()));
-                targetWeightField.setText(String.valueOf(profile.getTargetWeight()));
-            }
-
-            dbManager.closeConnection();
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(this, "Error loading profile: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-            e.printStackTrace();
-        }
+        AsyncDataAccess.submit(this,
+                db -> db.getUser(user.getUsername()),
+                loadedUser -> {
+                    if (loadedUser != null) {
+                        ProfileData profile = loadedUser.getProfile();
+                        nameField.setText(profile.getName());
+                        ageField.setText(String.valueOf(profile.getAge()));
+                        genderComboBox.setSelectedItem(profile.getGender());
+                        heightField.setText(String.valueOf(profile.getHeight()));
+                        targetWeightField.setText(String.valueOf(profile.getTargetWeight()));
+                    }
+                },
+                e -> {
+                    JOptionPane.showMessageDialog(this, "Error loading profile: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    e.printStackTrace();
+                });
     }
 
     private void saveProfileData() {
+        ProfileData profile = new ProfileData();
         try {
             // Retrieve input data
-            String name = nameField.getText().trim();
-            int age = Integer.parseInt(ageField.getText().trim());
-            String gender = (String) genderComboBox.getSelectedItem();
-            double height = Double.parseDouble(heightField.getText().trim());
-            double targetWeight = Double.parseDouble(targetWeightField.getText().trim());
-
-            // Connect to the database
-            DatabaseManager dbManager = new DatabaseManager();
-            dbManager.connect();
-
-            // Update the profile data
-            String updateSql = "UPDATE users SET name = ?, age = ?, gender = ?, height = ?, target_weight = ? WHERE username = ?";
-            try (PreparedStatement pstmt = dbManager.getConnection().prepareStatement(updateSql)) {
-                pstmt.setString(1, name);
-                pstmt.setInt(2, age);
-                pstmt.setString(3, gender);
-                pstmt.setDouble(4, height);
-                pstmt.setDouble(5, targetWeight);
-                pstmt.setString(6, user.getUsername());
-                int rowsUpdated = pstmt.executeUpdate();
-
-                if (rowsUpdated > 0) {
-                    JOptionPane.showMessageDialog(this, "Profile updated successfully!");
-                } else {
-                    JOptionPane.showMessageDialog(this, "Failed to update profile. Please try again.");
-                }
-            }
-            dbManager.closeConnection();
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(this, "Database error: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-            e.printStackTrace();
+            profile.setName(nameField.getText().trim());
+            profile.setAge(Integer.parseInt(ageField.getText().trim()));
+            profile.setGender((String) genderComboBox.getSelectedItem());
+            profile.setHeight(Double.parseDouble(heightField.getText().trim()));
+            profile.setTargetWeight(Double.parseDouble(targetWeightField.getText().trim()));
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(this, "Invalid input. Please ensure all fields are filled correctly.", "Error", JOptionPane.WARNING_MESSAGE);
+            return;
         }
+
+        // Update the profile data on a worker; the session cache is invalidated by the write
+        AsyncDataAccess.submit(null,
+                db -> db.updateProfile(user.getUsername(), profile),
+                updated -> {
+                    if (updated) {
+                        user.setProfile(profile);
+                        JOptionPane.showMessageDialog(this, "Profile updated successfully!");
+                    } else {
+                        JOptionPane.showMessageDialog(this, "Failed to update profile. Please try again.");
+                    }
+                },
+                e -> {
+                    JOptionPane.showMessageDialog(this, "Database error: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    e.printStackTrace();
+                });
     }
 }
@@ -0,0 +1,319 @@
+package com.healthbuddy;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 資料庫結構遷移類別
+ * 依版本順序套用尚未執行的遷移，並在 schema_version 表記錄每個版本的執行時間
+ */
+public class SchemaMigrator {
+
+    // Converts a legacy yyyy-MM-dd date column to days since 1970-01-01
+    private static final String EPOCH_DAY_OF_DATE =
+            "(CASE WHEN typeof(date) = 'integer' THEN date " +
+                    "ELSE CAST(julianday(date) - 2440587.5 AS INTEGER) END)";
+
+    // Ordered by version; never edit a migration once released, add a new one instead.
+    // Every step must be idempotent so a partially upgraded database can be migrated again.
+    private static final List<Migration> MIGRATIONS = Arrays.asList(
+            new Migration(1, "Create base tables", sql(
+                    "CREATE TABLE IF NOT EXISTS users (" +
+                            "username TEXT PRIMARY KEY," +
+                            "password TEXT NOT NULL," +
+                            "salt TEXT NOT NULL," +
+                            "name TEXT," +
+                            "age INTEGER," +
+                            "gender TEXT," +
+                            "height REAL," +
+                            "target_weight REAL" +
+                            ")",
+                    "CREATE TABLE IF NOT EXISTS health_data (" +
+                            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                            "username TEXT," +
+                            "date DATE NOT NULL," +
+                            "weight REAL," +
+                            "bmi REAL," +
+                            "steps INTEGER," +
+                            "blood_pressure TEXT," +
+                            "heart_rate INTEGER," +
+                            "FOREIGN KEY(username) REFERENCES users(username)" +
+                            ")",
+                    "CREATE TABLE IF NOT EXISTS daily_habits (" +
+                            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                            "username TEXT," +
+                            "date DATE NOT NULL," +
+                            "water_intake INTEGER," +
+                            "diet TEXT," +
+                            "sleep_hours INTEGER," +
+                            "FOREIGN KEY(username) REFERENCES users(username)" +
+                            ")",
+                    "CREATE TABLE IF NOT EXISTS health_goals (" +
+                            "username TEXT PRIMARY KEY," +
+                            "target_weight REAL," +
+                            "target_steps INTEGER," +
+                            "target_water_intake INTEGER," +
+                            "target_sleep_hours INTEGER," +
+                            "FOREIGN KEY(username) REFERENCES users(username)" +
+                            ")")),
+            new Migration(2, "Unique (username, date) keys and covering indexes", sql(
+                    "DELETE FROM health_data WHERE id NOT IN " +
+                            "(SELECT MAX(id) FROM health_data GROUP BY username, date)",
+                    "DELETE FROM daily_habits WHERE id NOT IN " +
+                            "(SELECT MAX(id) FROM daily_habits GROUP BY username, date)",
+                    "CREATE UNIQUE INDEX IF NOT EXISTS idx_health_data_user_date " +
+                            "ON health_data (username, date)",
+                    "CREATE INDEX IF NOT EXISTS idx_health_data_user_date_metrics " +
+                            "ON health_data (username, date, weight, bmi, steps, heart_rate, blood_pressure)",
+                    "CREATE UNIQUE INDEX IF NOT EXISTS idx_daily_habits_user_date " +
+                            "ON daily_habits (username, date)")),
+            // SQLite cannot change a column type in place, so both tables are rebuilt.
+            // Rows that were already converted (typeof integer) are copied unchanged.
+            new Migration(3, "Store dates as integer epoch days", connection -> {
+                reportUnconvertibleDates(connection, "health_data");
+                reportUnconvertibleDates(connection, "daily_habits");
+                sql(
+                    "DROP TABLE IF EXISTS health_data_new",
+                    "CREATE TABLE health_data_new (" +
+                            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                            "username TEXT," +
+                            "date INTEGER NOT NULL," +
+                            "weight REAL," +
+                            "bmi REAL," +
+                            "steps INTEGER," +
+                            "blood_pressure TEXT," +
+                            "heart_rate INTEGER," +
+                            "FOREIGN KEY(username) REFERENCES users(username)" +
+                            ")",
+                    "INSERT INTO health_data_new (id, username, date, weight, bmi, steps, blood_pressure, heart_rate) " +
+                            "SELECT id, username, " + EPOCH_DAY_OF_DATE + ", weight, bmi, steps, blood_pressure, heart_rate " +
+                            "FROM health_data WHERE " + EPOCH_DAY_OF_DATE + " IS NOT NULL",
+                    "DROP TABLE health_data",
+                    "ALTER TABLE health_data_new RENAME TO health_data",
+                    "CREATE UNIQUE INDEX IF NOT EXISTS idx_health_data_user_date " +
+                            "ON health_data (username, date)",
+                    "CREATE INDEX IF NOT EXISTS idx_health_data_user_date_metrics " +
+                            "ON health_data (username, date, weight, bmi, steps, heart_rate, blood_pressure)",
+                    "DROP TABLE IF EXISTS daily_habits_new",
+                    "CREATE TABLE daily_habits_new (" +
+                            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                            "username TEXT," +
+                            "date INTEGER NOT NULL," +
+                            "water_intake INTEGER," +
+                            "diet TEXT," +
+                            "sleep_hours INTEGER," +
+                            "FOREIGN KEY(username) REFERENCES users(username)" +
+                            ")",
+                    "INSERT INTO daily_habits_new (id, username, date, water_intake, diet, sleep_hours) " +
+                            "SELECT id, username, " + EPOCH_DAY_OF_DATE + ", water_intake, diet, sleep_hours " +
+                            "FROM daily_habits WHERE " + EPOCH_DAY_OF_DATE + " IS NOT NULL",
+                    "DROP TABLE daily_habits",
+                    "ALTER TABLE daily_habits_new RENAME TO daily_habits",
+                    "CREATE UNIQUE INDEX IF NOT EXISTS idx_daily_habits_user_date " +
+                            "ON daily_habits (username, date)").apply(connection);
+            }),
+            // Weekly and monthly aggregates per metric, kept current by DatabaseManager on every write
+            new Migration(4, "Weekly and monthly health data rollups", connection -> {
+                sql("CREATE TABLE IF NOT EXISTS health_rollups (" +
+                        "username TEXT NOT NULL," +
+                        "granularity TEXT NOT NULL," +
+                        "metric TEXT NOT NULL," +
+                        "bucket_start INTEGER NOT NULL," +
+                        "count INTEGER NOT NULL," +
+                        "min_value REAL," +
+                        "max_value REAL," +
+                        "sum_value REAL," +
+                        "sum_squares REAL," +
+                        "PRIMARY KEY (username, granularity, metric, bucket_start)" +
+                        ") WITHOUT ROWID").apply(connection);
+                HealthRollups.rebuild(connection);
+            }),
+            // Blood pressure moves from "120/80" text to two integer columns, so it can be indexed,
+            // charted and aggregated like every other metric
+            new Migration(5, "Split blood pressure into systolic and diastolic columns",
+                    SchemaMigrator::splitBloodPressure));
+
+    private static final int BLOOD_PRESSURE_BATCH = Integer.getInteger("healthbuddy.migration.batchSize", 1000);
+
+    /**
+     * 套用所有尚未執行的遷移，全部在同一個交易中完成
+     *
+     * @return 遷移前的結構版本，0 代表全新的資料庫
+     */
+    public static int migrate(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "version INTEGER PRIMARY KEY," +
+                    "description TEXT NOT NULL," +
+                    "applied_at TEXT NOT NULL," +
+                    "duration_ms INTEGER NOT NULL" +
+                    ")");
+        }
+
+        int startVersion = getCurrentVersion(connection);
+        if (startVersion >= latestVersion()) {
+            return startVersion;
+        }
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        long totalStart = System.nanoTime();
+        Migration current = null;
+        try {
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version <= startVersion) {
+                    continue;
+                }
+                current = migration;
+                long start = System.nanoTime();
+                migration.step.apply(connection);
+                long durationMs = (System.nanoTime() - start) / 1_000_000;
+                recordVersion(connection, migration, durationMs);
+                System.out.println(String.format("Applied schema migration %d (%s) in %d ms",
+                        migration.version, migration.description, durationMs));
+            }
+            connection.commit();
+            System.out.println(String.format("Database schema upgraded from version %d to %d in %d ms",
+                    startVersion, latestVersion(), (System.nanoTime() - totalStart) / 1_000_000));
+        } catch (SQLException e) {
+            connection.rollback();
+            System.err.println("Error applying schema migration "
+                    + (current != null ? current.version : startVersion) + ": " + e.getMessage());
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        return startVersion;
+    }
+
+    public static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    private static int getCurrentVersion(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT MAX(version) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static void recordVersion(Connection connection, Migration migration, long durationMs)
+            throws SQLException {
+        String sql = "INSERT OR REPLACE INTO schema_version (version, description, applied_at, duration_ms) "
+                + "VALUES (?, ?, ?, ?)";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, migration.version);
+            pstmt.setString(2, migration.description);
+            pstmt.setString(3, LocalDateTime.now().toString());
+            pstmt.setLong(4, durationMs);
+            pstmt.executeUpdate();
+        }
+    }
+
+    // The epoch-day copy leaves out rows whose date SQLite cannot read, so they are counted first
+    // and reported rather than disappearing without a trace
+    private static void reportUnconvertibleDates(Connection connection, String table) throws SQLException {
+        String sql = "SELECT COUNT(*), MIN(date) FROM " + table + " WHERE " + EPOCH_DAY_OF_DATE + " IS NULL";
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery(sql)) {
+            if (rs.next() && rs.getLong(1) > 0) {
+                System.err.println(String.format(
+                        "Schema migration 3 drops %d %s rows with unreadable dates, for example '%s'",
+                        rs.getLong(1), table, rs.getString(2)));
+            }
+        }
+    }
+
+    private static void splitBloodPressure(Connection connection) throws SQLException {
+        if (!hasColumn(connection, "health_data", "systolic")) {
+            sql("ALTER TABLE health_data ADD COLUMN systolic INTEGER",
+                    "ALTER TABLE health_data ADD COLUMN diastolic INTEGER").apply(connection);
+        }
+        if (hasColumn(connection, "health_data", "blood_pressure")) {
+            // Rows are parsed in id order, one batch at a time, so memory stays flat on large tables;
+            // unparseable values are left null
+            String select = "SELECT id, blood_pressure FROM health_data " +
+                    "WHERE id > ? AND blood_pressure IS NOT NULL ORDER BY id LIMIT " + BLOOD_PRESSURE_BATCH;
+            String update = "UPDATE health_data SET systolic = ?, diastolic = ? WHERE id = ?";
+            try (PreparedStatement query = connection.prepareStatement(select);
+                    PreparedStatement pstmt = connection.prepareStatement(update)) {
+                long lastId = 0;
+                int rows;
+                do {
+                    rows = 0;
+                    query.setLong(1, lastId);
+                    try (ResultSet rs = query.executeQuery()) {
+                        while (rs.next()) {
+                            lastId = rs.getLong(1);
+                            rows++;
+                            String bloodPressure = rs.getString(2);
+                            int systolic = HealthData.parseSystolic(bloodPressure);
+                            int diastolic = HealthData.parseDiastolic(bloodPressure);
+                            if (systolic == 0 || diastolic == 0) {
+                                continue;
+                            }
+                            pstmt.setInt(1, systolic);
+                            pstmt.setInt(2, diastolic);
+                            pstmt.setLong(3, lastId);
+                            pstmt.addBatch();
+                        }
+                    }
+                    pstmt.executeBatch();
+                } while (rows == BLOOD_PRESSURE_BATCH);
+            }
+        }
+        // The covering index names blood_pressure, so it is replaced before the column can be dropped
+        sql("DROP INDEX IF EXISTS idx_health_data_user_date_metrics",
+                "CREATE INDEX idx_health_data_user_date_metrics " +
+                        "ON health_data (username, date, weight, bmi, steps, heart_rate, systolic, diastolic)")
+                .apply(connection);
+        if (hasColumn(connection, "health_data", "blood_pressure")) {
+            sql("ALTER TABLE health_data DROP COLUMN blood_pressure").apply(connection);
+        }
+        HealthRollups.rebuild(connection);
+    }
+
+    private static boolean hasColumn(Connection connection, String table, String column) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Step sql(String... statements) {
+        return connection -> {
+            try (Statement stmt = connection.createStatement()) {
+                for (String sql : statements) {
+                    stmt.execute(sql);
+                }
+            }
+        };
+    }
+
+    private interface Step {
+        void apply(Connection connection) throws SQLException;
+    }
+
+    private static class Migration {
+        private final int version;
+        private final String description;
+        private final Step step;
+
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+}
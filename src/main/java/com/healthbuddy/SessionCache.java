@@ -0,0 +1,91 @@
+package com.healthbuddy;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 工作階段快取類別
+ * 在記憶體中保存 User 及其 ProfileData、HealthGoals，DatabaseManager.getUser 先查這裡再查資料庫；
+ * 個人資料或目標寫入後由 DatabaseManager 呼叫 invalidate，下次讀取時重新載入
+ */
+public final class SessionCache {
+    private static final Map<String, User> users = new ConcurrentHashMap<>();
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong invalidations = new AtomicLong();
+
+    private SessionCache() {
+    }
+
+    /**
+     * 取得快取的使用者，尚未載入時回傳 null；每次呼叫都計入命中或未命中
+     */
+    public static User getUser(String username) {
+        User user = users.get(username);
+        if (user != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return user;
+    }
+
+    static void putUser(User user) {
+        if (user != null) {
+            users.put(user.getUsername(), user);
+        }
+    }
+
+    /**
+     * 只查快取的個人資料，不會存取資料庫；尚未載入時回傳 null
+     */
+    public static ProfileData getProfile(String username) {
+        User user = getUser(username);
+        return user != null ? user.getProfile() : null;
+    }
+
+    /**
+     * 取得個人資料，快取沒有時經由 DatabaseManager 載入
+     *
+     * @return 找不到使用者時回傳 null
+     */
+    public static ProfileData loadProfile(DatabaseManager dbManager, String username) throws SQLException {
+        User user = dbManager.getUser(username);
+        return user != null ? user.getProfile() : null;
+    }
+
+    /**
+     * 移除某位使用者的快取，個人資料或目標寫入後必須呼叫
+     */
+    public static void invalidate(String username) {
+        if (users.remove(username) != null) {
+            invalidations.incrementAndGet();
+        }
+    }
+
+    public static void clear() {
+        users.clear();
+    }
+
+    public static long getHits() {
+        return hits.get();
+    }
+
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    public static long getInvalidations() {
+        return invalidations.get();
+    }
+
+    public static String describe() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return String.format("Session cache: %d users, %d hits, %d misses (%.1f%% hit rate), %d invalidations",
+                users.size(), h, total - h, total > 0 ? h * 100.0 / total : 0.0, invalidations.get());
+    }
+}
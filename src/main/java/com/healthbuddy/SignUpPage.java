@@ -2,12 +2,12 @@ package com.healthbuddy;
 
 import javax.swing.*;
 import java.awt.*;
-import java.sql.SQLException;
 
 public class SignUpPage extends JFrame {
     private JTextField usernameField;
     private JPasswordField passwordField;
     private JPasswordField confirmPasswordField;
+    private JButton signUpButton;
 
     public SignUpPage() {
         UIConfig.setupUIDefaults();
@@ -75,7 +75,7 @@ public class SignUpPage extends JFrame {
         mainPanel.add(confirmPasswordField, gbc);
 
         // Sign Up button
-        JButton signUpButton = createStyledButton("Sign Up");
+        signUpButton = createStyledButton("Sign Up");
         gbc.gridx = 0;
         gbc.gridy = 7;
         gbc.gridwidth = 1;
@@ -138,27 +138,41 @@ public class SignUpPage extends JFrame {
             return;
         }
 
-        try {
-            DatabaseManager dbManager = new DatabaseManager();
-            dbManager.connect();
-
-            if (dbManager.checkUsernameExists(username)) {
-                JOptionPane.showMessageDialog(this, "Username already exists. Please try a new name.", "Error", JOptionPane.ERROR_MESSAGE);
-            } else {
-                boolean success = dbManager.insertUser(username, password);
-                if (success) {
-                    User user = dbManager.getUser(username);
-                    if (user != null) {
+        // Hashing the new password takes a noticeable moment, so the account is created on a worker
+        signUpButton.setEnabled(false);
+        AsyncDataAccess.submit(this,
+                db -> {
+                    if (db.checkUsernameExists(username)) {
+                        return new SignUpResult(true, null);
+                    }
+                    db.insertUser(username, password);
+                    return new SignUpResult(false, db.getUser(username));
+                },
+                result -> {
+                    signUpButton.setEnabled(true);
+                    if (result.usernameTaken) {
+                        JOptionPane.showMessageDialog(this, "Username already exists. Please try a new name.", "Error", JOptionPane.ERROR_MESSAGE);
+                    } else if (result.user != null) {
                         dispose();
-                        new HomePage(user).setVisible(true);
+                        new HomePage(result.user).setVisible(true);
                     } else {
                         JOptionPane.showMessageDialog(this, "Failed to retrieve user data.", "Error", JOptionPane.ERROR_MESSAGE);
                     }
-                }
-            }
-            dbManager.closeConnection();
-        } catch (SQLException ex) {
-            JOptionPane.showMessageDialog(this, "Sign Up Failed: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                },
+                ex -> {
+                    signUpButton.setEnabled(true);
+                    JOptionPane.showMessageDialog(this, "Sign Up Failed: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                });
+    }
+
+    // Outcome of the background sign-up; user is null when the new account could not be read back
+    private static class SignUpResult {
+        private final boolean usernameTaken;
+        private final User user;
+
+        SignUpResult(boolean usernameTaken, User user) {
+            this.usernameTaken = usernameTaken;
+            this.user = user;
         }
     }
 }
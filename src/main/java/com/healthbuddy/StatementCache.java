@@ -0,0 +1,167 @@
+package com.healthbuddy;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 預備語句快取類別
+ * 每條連線各自保存一份以 SQL 文字為鍵的 LRU 快取，重複使用已解析的 PreparedStatement；
+ * 快取語句會參照連線，所以關閉連線的一方必須先呼叫 discard 才能釋放快取
+ */
+public class StatementCache {
+    private static final int MAX_STATEMENTS = Integer.getInteger("healthbuddy.db.statementCacheSize", 32);
+
+    // Keyed by identity: every connection is owned by ConnectionPool or a report worker, which discard on close
+    private static final Map<Connection, StatementCache> caches = new IdentityHashMap<>();
+    private static final AtomicLong totalHits = new AtomicLong();
+    private static final AtomicLong totalMisses = new AtomicLong();
+
+    private final Connection connection;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+    // Last result set of each cached statement that was run through executeQuery
+    private final Map<PreparedStatement, ResultSet> results = new IdentityHashMap<>();
+    private long hits;
+    private long misses;
+
+    private StatementCache(Connection connection) {
+        this.connection = connection;
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > MAX_STATEMENTS) {
+                    results.remove(eldest.getValue());
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 取得指定連線的快取，不存在時建立
+     */
+    public static StatementCache forConnection(Connection connection) {
+        synchronized (caches) {
+            return caches.computeIfAbsent(connection, StatementCache::new);
+        }
+    }
+
+    /**
+     * 關閉並移除指定連線的所有快取語句，於連線關閉前呼叫
+     */
+    public static void discard(Connection connection) {
+        StatementCache cache;
+        synchronized (caches) {
+            cache = caches.remove(connection);
+        }
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * 連線歸還時呼叫：關閉借用者留下未關閉的結果集並清除參數，讓閒置連線不再持有讀取快照
+     */
+    public static void reset(Connection connection) {
+        StatementCache cache;
+        synchronized (caches) {
+            cache = caches.get(connection);
+        }
+        if (cache != null) {
+            cache.closeResults();
+        }
+    }
+
+    /**
+     * 取得 SQL 對應的預備語句；呼叫者不可關閉回傳的語句
+     */
+    public synchronized PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement pstmt = statements.get(sql);
+        if (pstmt != null && !pstmt.isClosed()) {
+            hits++;
+            totalHits.incrementAndGet();
+            pstmt.clearParameters();
+            return pstmt;
+        }
+
+        misses++;
+        totalMisses.incrementAndGet();
+        pstmt = connection.prepareStatement(sql);
+        statements.put(sql, pstmt);
+        return pstmt;
+    }
+
+    /**
+     * 執行快取語句的查詢並記下結果集；呼叫者仍應關閉結果集，忘記關閉時會在連線歸還時關閉
+     */
+    public synchronized ResultSet executeQuery(PreparedStatement pstmt) throws SQLException {
+        ResultSet rs = pstmt.executeQuery();
+        results.put(pstmt, rs);
+        return rs;
+    }
+
+    private synchronized void closeResults() {
+        for (ResultSet rs : results.values()) {
+            try {
+                // Closing resets the statement, which ends its read transaction
+                rs.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing cached result set: " + e.getMessage());
+            }
+        }
+        results.clear();
+        for (PreparedStatement pstmt : statements.values()) {
+            try {
+                pstmt.clearParameters();
+            } catch (SQLException e) {
+                System.err.println("Error clearing cached statement: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 關閉所有快取語句
+     */
+    public synchronized void clear() {
+        results.clear();
+        for (PreparedStatement pstmt : statements.values()) {
+            closeQuietly(pstmt);
+        }
+        statements.clear();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized int size() {
+        return statements.size();
+    }
+
+    public static long getTotalHits() {
+        return totalHits.get();
+    }
+
+    public static long getTotalMisses() {
+        return totalMisses.get();
+    }
+
+    private static void closeQuietly(PreparedStatement pstmt) {
+        try {
+            pstmt.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing cached statement: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.healthbuddy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Base64;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DatabaseManagerLoginTest {
+    private static final String USERNAME = "kiosk";
+    private static final String PASSWORD = "Secret#Passw0rd";
+
+    private Connection connection;
+    private DatabaseManager dbManager;
+
+    @BeforeEach
+    void openDatabase() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        SchemaMigrator.migrate(connection);
+        dbManager = new DatabaseManager(connection);
+    }
+
+    @AfterEach
+    void closeDatabase() throws SQLException {
+        StatementCache.discard(connection);
+        connection.close();
+    }
+
+    @Test
+    void legacyHashIsUpgradedOnSuccessfulLogin() throws Exception {
+        String salt = PasswordSecurity.generateSalt();
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        md.update(Base64.getDecoder().decode(salt));
+        String legacy = Base64.getEncoder().encodeToString(md.digest(PASSWORD.getBytes()));
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "INSERT INTO users (username, password, salt) VALUES (?, ?, ?)")) {
+            pstmt.setString(1, USERNAME);
+            pstmt.setString(2, legacy);
+            pstmt.setString(3, salt);
+            pstmt.executeUpdate();
+        }
+
+        assertEquals(DatabaseManager.LoginResult.SUCCESS, dbManager.authenticate(USERNAME, PASSWORD.toCharArray()));
+
+        String[] upgraded = storedPassword();
+        assertNotEquals(legacy, upgraded[0]);
+        assertTrue(upgraded[0].startsWith(PasswordHashAlgorithm.PBKDF2_SHA256.getId() + "$"));
+        assertFalse(PasswordSecurity.needsRehash(upgraded[0]));
+        assertEquals(DatabaseManager.LoginResult.SUCCESS, dbManager.authenticate(USERNAME, PASSWORD.toCharArray()));
+    }
+
+    @Test
+    void failedLoginKeepsStoredHash() throws Exception {
+        assertTrue(dbManager.insertUser(USERNAME, PASSWORD));
+        String[] before = storedPassword();
+
+        assertEquals(DatabaseManager.LoginResult.INVALID_PASSWORD,
+                dbManager.authenticate(USERNAME, "wrong-password".toCharArray()));
+        assertEquals(before[0], storedPassword()[0]);
+        assertEquals(DatabaseManager.LoginResult.UNKNOWN_USER,
+                dbManager.authenticate("nobody", PASSWORD.toCharArray()));
+    }
+
+    private String[] storedPassword() throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT password, salt FROM users WHERE username = ?")) {
+            pstmt.setString(1, USERNAME);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                assertTrue(rs.next());
+                return new String[] { rs.getString(1), rs.getString(2) };
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.healthbuddy;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+class DownsamplerTest {
+
+    @Test
+    void shortSeriesAreReturnedWhole() {
+        double[] x = { 1, 2, 3 };
+        double[] y = { 5, 6, 7 };
+
+        assertEquals(0, Downsampler.lttb(x, y, 0, 10).length);
+        assertArrayEquals(new int[] { 0 }, Downsampler.lttb(x, y, 1, 10));
+        assertArrayEquals(new int[] { 0, 1, 2 }, Downsampler.lttb(x, y, 3, 3));
+        // Fewer than three points cannot hold the first, the last and a bucket
+        assertArrayEquals(new int[] { 1, 2 }, Downsampler.lttb(x, y, 1, 3, 2));
+    }
+
+    @Test
+    void everyBucketContributesOnePointWithinItsEdges() {
+        for (int count = 4; count <= 120; count++) {
+            for (int threshold = 3; threshold < count; threshold++) {
+                int from = 5;
+                double[] x = new double[from + count];
+                double[] y = new double[from + count];
+                for (int i = 0; i < x.length; i++) {
+                    x[i] = i;
+                    y[i] = Math.sin(i * 0.7) * 10;
+                }
+                int[] selected = Downsampler.lttb(x, y, from, from + count, threshold);
+
+                String context = count + " points into " + threshold;
+                assertEquals(threshold, selected.length, context);
+                assertEquals(from, selected[0], context);
+                assertEquals(from + count - 1, selected[threshold - 1], context);
+                // Interior buckets split the points strictly between the first and the last one
+                double bucketSize = (double) (count - 2) / (threshold - 2);
+                for (int bucket = 0; bucket < threshold - 2; bucket++) {
+                    int start = from + 1 + (int) Math.floor(bucket * bucketSize);
+                    int end = from + 1 + (int) Math.floor((bucket + 1) * bucketSize);
+                    int index = selected[bucket + 1];
+                    assertTrue(index >= start && index < Math.min(end, from + count - 1),
+                            context + ": bucket " + bucket + " picked " + index);
+                }
+            }
+        }
+    }
+
+    @Test
+    void spikeSurvivesDownsampling() {
+        int count = 1000;
+        double[] x = new double[count];
+        double[] y = new double[count];
+        for (int i = 0; i < count; i++) {
+            x[i] = i;
+            y[i] = 70;
+        }
+        y[613] = 95;
+
+        int[] lttb = Downsampler.lttb(x, y, count, 50);
+        assertTrue(Arrays.stream(lttb).anyMatch(i -> i == 613));
+        int[] minMax = Downsampler.minMax(x, y, count, 25);
+        assertTrue(Arrays.stream(minMax).anyMatch(i -> i == 613));
+    }
+}
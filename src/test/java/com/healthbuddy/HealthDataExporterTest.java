@@ -0,0 +1,74 @@
+package com.healthbuddy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HealthDataExporterTest {
+    private static final int DAY = 19_000;
+
+    @TempDir
+    Path directory;
+
+    private Connection connection;
+    private DatabaseManager dbManager;
+
+    @BeforeEach
+    void openDatabase() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        SchemaMigrator.migrate(connection);
+        dbManager = new DatabaseManager(connection);
+    }
+
+    @AfterEach
+    void closeDatabase() throws SQLException {
+        StatementCache.discard(connection);
+        connection.close();
+    }
+
+    @Test
+    void loneSurrogateKeepsColumnarLengthPrefixInStep() throws Exception {
+        // A lone high surrogate followed by 'x', then a valid pair; SQLite stores the lone one as '?'
+        String username = "u\uD800x😀";
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "INSERT INTO health_data (username, date, steps) VALUES (?, ?, ?)")) {
+            pstmt.setString(1, username);
+            pstmt.setInt(2, DAY);
+            pstmt.setInt(3, 1234);
+            pstmt.executeUpdate();
+        }
+        Path file = directory.resolve("export.hbc");
+        new HealthDataExporter(dbManager).exportFile(Collections.singletonList(username), Integer.MIN_VALUE,
+                Integer.MAX_VALUE, file, null);
+
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+        in.position(6);
+        for (int i = 0; i < HealthDataExporter.COLUMNS.length; i++) {
+            in.get();
+            int nameLength = in.get();
+            in.position(in.position() + nameLength);
+        }
+        assertEquals(1, in.getInt());
+        int length = in.getShort() & 0xFFFF;
+        byte[] user = new byte[length];
+        in.get(user);
+        assertEquals(1 + 1 + 1 + 4, length);
+        assertEquals("u?x😀", new String(user, StandardCharsets.UTF_8));
+
+        // The date column follows directly: one presence byte, then the day
+        assertEquals(1, in.get());
+        assertEquals(DAY, in.getInt());
+    }
+}
@@ -0,0 +1,81 @@
+package com.healthbuddy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HealthDataImporterTest {
+    private static final String USERNAME = "kiosk";
+
+    @TempDir
+    Path directory;
+
+    private Connection connection;
+    private DatabaseManager dbManager;
+
+    @BeforeEach
+    void openDatabase() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        SchemaMigrator.migrate(connection);
+        dbManager = new DatabaseManager(connection);
+    }
+
+    @AfterEach
+    void closeDatabase() throws SQLException {
+        StatementCache.discard(connection);
+        connection.close();
+    }
+
+    @Test
+    void quotedFieldsKeepLaterColumnsInPlace() throws Exception {
+        Path file = directory.resolve("import.csv");
+        Files.write(file, String.join("\n",
+                "date,weight,diet,steps,heart_rate",
+                "2024-01-01,70.5,\"rice, \"\"tofu\"\", soup\",8000,72",
+                "\"2024-01-02\", 71 ,\" salad \",,",
+                "2024-01-03,,\"noodles, tea\",,",
+                "2024-01-04,,,\"1,234\",",
+                "2024-01-05,,,,").getBytes(StandardCharsets.UTF_8));
+
+        HealthDataImporter.ImportResult result = new HealthDataImporter(dbManager, USERNAME, 0.0, 100)
+                .importFile(file);
+
+        assertEquals(6, result.getLinesRead());
+        assertEquals(2, result.getRowsImported());
+        assertEquals(1, result.getRowsSkipped());
+        assertEquals(2, result.getRowsRejected());
+        assertTrue(result.getErrors().get(0).startsWith("line 5: "), result.getErrors().get(0));
+        assertEquals("line 6: no readings", result.getErrors().get(1));
+
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT date, weight, steps, heart_rate FROM health_data WHERE username = ? ORDER BY date")) {
+            pstmt.setString(1, USERNAME);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                assertTrue(rs.next());
+                assertEquals(LocalDate.of(2024, 1, 1).toEpochDay(), rs.getLong("date"));
+                assertEquals(70.5, rs.getDouble("weight"));
+                assertEquals(8000, rs.getInt("steps"));
+                assertEquals(72, rs.getInt("heart_rate"));
+
+                assertTrue(rs.next());
+                assertEquals(LocalDate.of(2024, 1, 2).toEpochDay(), rs.getLong("date"));
+                assertEquals(71.0, rs.getDouble("weight"));
+                assertFalse(rs.next());
+            }
+        }
+    }
+}
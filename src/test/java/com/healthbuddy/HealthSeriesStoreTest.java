@@ -0,0 +1,143 @@
+package com.healthbuddy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class HealthSeriesStoreTest {
+    // No archive segments exist for this name, so snapshots hold only the rows given here
+    private static final String USERNAME = "series-store-test";
+    private static final int FIRST_DAY = 19_000;
+    // Before 1970 as well, so the negative half of the (fromDay << 8) | ordinal key is covered
+    private static final int[] FROM_DAYS = { Integer.MIN_VALUE, -5, FIRST_DAY, FIRST_DAY + 7, FIRST_DAY + 500 };
+
+    private Connection connection;
+    private final List<String> rows = new ArrayList<>();
+
+    @BeforeEach
+    void openDatabase() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE series (date INTEGER, weight REAL, bmi REAL, steps INTEGER, "
+                    + "systolic INTEGER, diastolic INTEGER, heart_rate INTEGER)");
+        }
+        for (int i = 0; i < 20; i++) {
+            // Every third day has no blood pressure and every fifth no heart rate
+            rows.add((FIRST_DAY + i) + ", " + (80 - i * 0.1) + ", " + (25 - i * 0.03) + ", " + (6000 + i * 37)
+                    + (i % 3 == 0 ? ", NULL, NULL" : ", " + (120 + i % 4) + ", " + (80 - i % 3))
+                    + (i % 5 == 0 ? ", NULL" : ", " + (60 + i % 7)));
+        }
+    }
+
+    @AfterEach
+    void closeDatabase() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    void appendedReadingExtendsCachedStatisticsLikeARebuild() throws Exception {
+        HealthSeriesStore.Snapshot snapshot = read();
+        primeStatistics(snapshot);
+
+        int day = FIRST_DAY + 30;
+        HealthSeriesStore.Snapshot appended = snapshot.upsert(day, reading(day, 77.5, 24.1, 9000, 0, 0, 58));
+        rows.add(day + ", 77.5, 24.1, 9000, NULL, NULL, 58");
+
+        assertEquals(snapshot.size() + 1, appended.size());
+        assertEquals(day, appended.day(appended.size() - 1));
+        assertSameAsRebuild(appended);
+    }
+
+    @Test
+    void earlierOrReplacedReadingRebuildsStatistics() throws Exception {
+        HealthSeriesStore.Snapshot snapshot = read();
+        primeStatistics(snapshot);
+
+        int earlier = FIRST_DAY - 3;
+        HealthSeriesStore.Snapshot inserted = snapshot.upsert(earlier, reading(earlier, 82, 26, 4000, 130, 85, 70));
+        rows.add(0, earlier + ", 82.0, 26.0, 4000, 130, 85, 70");
+        assertEquals(earlier, inserted.day(0));
+        assertSameAsRebuild(inserted);
+
+        int last = FIRST_DAY + 19;
+        HealthSeriesStore.Snapshot replaced = inserted.upsert(last, reading(last, 90, 28, 100, 140, 90, 99));
+        rows.set(rows.size() - 1, last + ", 90.0, 28.0, 100, 140, 90, 99");
+        assertEquals(inserted.size(), replaced.size());
+        assertSameAsRebuild(replaced);
+    }
+
+    @Test
+    void emptySnapshotGrowsOneReadingAtATime() throws Exception {
+        rows.clear();
+        HealthSeriesStore.Snapshot snapshot = read();
+        assertEquals(0, snapshot.size());
+        HealthStatistics.Accumulator none = snapshot.statistics(HealthSeriesStore.Column.WEIGHT, Integer.MIN_VALUE);
+        assertEquals(0, none.getCount());
+        assertTrue(Double.isNaN(none.getMean()));
+
+        HealthSeriesStore.Snapshot one = snapshot.upsert(FIRST_DAY, reading(FIRST_DAY, 70, 22, 5000, 0, 0, 65));
+        HealthStatistics.Accumulator single = one.statistics(HealthSeriesStore.Column.WEIGHT, Integer.MIN_VALUE);
+        assertEquals(1, single.getCount());
+        assertEquals(70, single.getMean());
+        assertTrue(Double.isNaN(single.getSlope()));
+        assertTrue(Double.isNaN(one.value(HealthSeriesStore.Column.SYSTOLIC, 0)));
+        assertEquals(0, one.statistics(HealthSeriesStore.Column.SYSTOLIC, Integer.MIN_VALUE).getCount());
+    }
+
+    private void primeStatistics(HealthSeriesStore.Snapshot snapshot) {
+        for (HealthSeriesStore.Column column : HealthSeriesStore.Column.values()) {
+            for (int fromDay : FROM_DAYS) {
+                snapshot.statistics(column, fromDay);
+            }
+        }
+    }
+
+    private void assertSameAsRebuild(HealthSeriesStore.Snapshot updated) throws Exception {
+        HealthSeriesStore.Snapshot rebuilt = read();
+        assertEquals(rebuilt.size(), updated.size());
+        for (HealthSeriesStore.Column column : HealthSeriesStore.Column.values()) {
+            for (int i = 0; i < rebuilt.size(); i++) {
+                assertEquals(rebuilt.day(i), updated.day(i));
+                assertEquals(rebuilt.value(column, i), updated.value(column, i), 1e-9, column + " at " + i);
+            }
+            for (int fromDay : FROM_DAYS) {
+                HealthStatisticsTest.assertSameStatistics(rebuilt.statistics(column, fromDay),
+                        updated.statistics(column, fromDay));
+            }
+        }
+    }
+
+    private HealthSeriesStore.Snapshot read() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DELETE FROM series");
+            for (String row : rows) {
+                stmt.execute("INSERT INTO series VALUES (" + row + ")");
+            }
+            return HealthSeriesStore.Snapshot.read(stmt.executeQuery("SELECT * FROM series ORDER BY date"),
+                    HealthArchive.cursor(USERNAME, Integer.MIN_VALUE, Integer.MAX_VALUE));
+        }
+    }
+
+    private static HealthData reading(int day, double weight, double bmi, int steps, int systolic, int diastolic,
+            int heartRate) {
+        HealthData data = new HealthData();
+        data.setDate(LocalDate.ofEpochDay(day));
+        data.setWeight(weight);
+        data.setBmi(bmi);
+        data.setSteps(steps);
+        data.setSystolic(systolic);
+        data.setDiastolic(diastolic);
+        data.setHeartRate(heartRate);
+        return data;
+    }
+}
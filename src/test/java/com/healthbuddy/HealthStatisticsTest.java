@@ -0,0 +1,168 @@
+package com.healthbuddy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class HealthStatisticsTest {
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    void emptyAndSinglePointAccumulators() {
+        HealthStatistics.Accumulator empty = new HealthStatistics.Accumulator();
+        assertEquals(0, empty.getCount());
+        assertTrue(Double.isNaN(empty.getMean()));
+        assertTrue(Double.isNaN(empty.getVariance()));
+        assertTrue(Double.isNaN(empty.getSlope()));
+        assertTrue(Double.isNaN(empty.getEwma()));
+        assertTrue(Double.isNaN(empty.getMin()));
+        assertTrue(Double.isNaN(empty.getMax()));
+
+        HealthStatistics.Accumulator one = new HealthStatistics.Accumulator();
+        one.add(100, 72.5);
+        one.add(101, Double.NaN);
+        assertEquals(1, one.getCount());
+        assertEquals(72.5, one.getMean());
+        assertEquals(72.5, one.getEwma());
+        assertEquals(72.5, one.getMin());
+        assertEquals(72.5, one.getMax());
+        assertTrue(Double.isNaN(one.getVariance()));
+        assertTrue(Double.isNaN(one.getSlope()));
+    }
+
+    @Test
+    void slopeOfALineWithGapsIsExact() {
+        // y = 2x + 1 on days 10..19, with two unrecorded days
+        double[] x = new double[10];
+        double[] y = new double[10];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = 10 + i;
+            y[i] = 2 * x[i] + 1;
+        }
+        y[3] = Double.NaN;
+        y[7] = Double.NaN;
+
+        HealthStatistics.Accumulator accumulator = new HealthStatistics.Accumulator();
+        HealthStatistics.accumulate(x, y, 0, x.length, accumulator);
+
+        assertEquals(8, accumulator.getCount());
+        assertEquals(2.0, accumulator.getSlope(), EPSILON);
+        assertEquals(2 * 25 + 1, accumulator.trendAt(25), EPSILON);
+        assertEquals(21, accumulator.getMin());
+        assertEquals(39, accumulator.getMax());
+        // Sample variance of 2x + 1 over x = 10, 11, 12, 14, 15, 16, 18, 19
+        double mean = (21 + 23 + 25 + 29 + 31 + 33 + 37 + 39) / 8.0;
+        double squares = 0;
+        for (int i = 0; i < y.length; i++) {
+            if (!Double.isNaN(y[i])) {
+                squares += (y[i] - mean) * (y[i] - mean);
+            }
+        }
+        assertEquals(mean, accumulator.getMean(), EPSILON);
+        assertEquals(squares / 7, accumulator.getVariance(), EPSILON);
+    }
+
+    @Test
+    void mergeMatchesAddingEveryPoint() {
+        Random random = new Random(42);
+        double[] x = new double[200];
+        double[] y = new double[200];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = 18_000 + i * 2;
+            y[i] = random.nextInt(10) == 0 ? Double.NaN : 60 + random.nextGaussian() * 5 + i * 0.05;
+        }
+        HealthStatistics.Accumulator expected = new HealthStatistics.Accumulator();
+        HealthStatistics.accumulate(x, y, 0, x.length, expected);
+
+        for (int split : new int[] { 0, 1, 57, 199, 200 }) {
+            HealthStatistics.Accumulator earlier = new HealthStatistics.Accumulator();
+            HealthStatistics.Accumulator later = new HealthStatistics.Accumulator();
+            HealthStatistics.accumulate(x, y, 0, split, earlier);
+            HealthStatistics.accumulate(x, y, split, x.length, later);
+            earlier.merge(later);
+            assertSameStatistics(expected, earlier);
+        }
+    }
+
+    @Test
+    void ewmaSkipsGapsAndMatchesTheAccumulator() {
+        double[] y = { Double.NaN, 10, 20, Double.NaN, 30 };
+        double[] out = new double[y.length];
+        HealthStatistics.ewma(y, 0, y.length, 0.5, out);
+
+        assertTrue(Double.isNaN(out[0]));
+        assertEquals(10, out[1], EPSILON);
+        assertEquals(15, out[2], EPSILON);
+        assertEquals(15, out[3], EPSILON);
+        assertEquals(22.5, out[4], EPSILON);
+
+        HealthStatistics.Accumulator accumulator = new HealthStatistics.Accumulator(0.5);
+        for (int i = 0; i < y.length; i++) {
+            accumulator.add(i, y[i]);
+        }
+        assertEquals(out[4], accumulator.getEwma(), EPSILON);
+    }
+
+    @Test
+    void rollingMeanUsesATimeWindow() {
+        double[] x = { 1, 2, 4, 8 };
+        double[] y = { 10, Double.NaN, 30, 50 };
+        double[] out = new double[x.length];
+        HealthStatistics.rollingMean(x, y, 0, x.length, 3, out);
+
+        assertEquals(10, out[0], EPSILON);
+        assertEquals(10, out[1], EPSILON);
+        // Day 1 has left the (1, 4] window
+        assertEquals(30, out[2], EPSILON);
+        assertEquals(50, out[3], EPSILON);
+    }
+
+    @Test
+    void percentileInterpolatesBetweenRanks() {
+        double[] y = { 5, 1, Double.NaN, 4, 2, 3 };
+        double[] scratch = new double[y.length];
+
+        assertEquals(3, HealthStatistics.percentile(y, 0, y.length, 0.5, scratch), EPSILON);
+        assertEquals(2, HealthStatistics.percentile(y, 0, y.length, 0.25, scratch), EPSILON);
+        assertEquals(4.6, HealthStatistics.percentile(y, 0, y.length, 0.9, scratch), EPSILON);
+        assertEquals(1, HealthStatistics.percentile(y, 0, y.length, 0, scratch), EPSILON);
+        assertEquals(5, HealthStatistics.percentile(y, 0, y.length, 1, scratch), EPSILON);
+        assertTrue(Double.isNaN(HealthStatistics.percentile(y, 2, 3, 0.5, scratch)));
+        assertTrue(Double.isNaN(HealthStatistics.percentile(y, 0, 0, 0.5, scratch)));
+        assertEquals(4, HealthStatistics.percentile(y, 3, 4, 0.9, scratch), EPSILON);
+    }
+
+    @Test
+    void quickselectMatchesSortingWithDuplicates() {
+        Random random = new Random(7);
+        for (int n = 1; n <= 60; n++) {
+            double[] values = new double[n];
+            for (int i = 0; i < n; i++) {
+                values[i] = random.nextInt(8);
+            }
+            double[] sorted = values.clone();
+            Arrays.sort(sorted);
+            for (double p : new double[] { 0, 0.1, 0.5, 0.75, 0.95, 1 }) {
+                double position = p * (n - 1);
+                int lower = (int) position;
+                double high = sorted[Math.min(lower + 1, n - 1)];
+                double expected = sorted[lower] + (high - sorted[lower]) * (position - lower);
+                assertEquals(expected, HealthStatistics.selectPercentile(values.clone(), n, p), EPSILON,
+                        "n = " + n + ", p = " + p);
+            }
+        }
+    }
+
+    static void assertSameStatistics(HealthStatistics.Accumulator expected, HealthStatistics.Accumulator actual) {
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(expected.getMean(), actual.getMean(), EPSILON);
+        assertEquals(expected.getVariance(), actual.getVariance(), EPSILON);
+        assertEquals(expected.getSlope(), actual.getSlope(), EPSILON);
+        assertEquals(expected.getEwma(), actual.getEwma(), EPSILON);
+        assertEquals(expected.getMin(), actual.getMin(), EPSILON);
+        assertEquals(expected.getMax(), actual.getMax(), EPSILON);
+    }
+}
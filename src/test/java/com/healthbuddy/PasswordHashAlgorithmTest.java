@@ -0,0 +1,54 @@
+package com.healthbuddy;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.nio.charset.StandardCharsets;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import org.junit.jupiter.api.Test;
+
+class PasswordHashAlgorithmTest {
+
+    @Test
+    void matchesPublishedPbkdf2Sha256Vector() throws Exception {
+        // RFC 7914 section 11: P = "passwd", S = "salt", c = 1, first 32 bytes of the derived key
+        byte[] expected = hex("55ac046e56e3089fec1691c22544b605f94185216dde0465e68b9d57c20dacbc");
+        byte[] actual = PasswordHashAlgorithm.PBKDF2_SHA256.derive("passwd".toCharArray(),
+                "salt".getBytes(StandardCharsets.US_ASCII), 1);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    void matchesJdkSecretKeyFactory() throws Exception {
+        SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+        String[] passwords = {
+            "a",
+            "Secret#Passw0rd",
+            "密碼與 emoji 🔒",
+            // Longer than the 64-byte HMAC block, so the key is hashed first
+            "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef-and-more"
+        };
+        int[] costs = { 1, 2, 1000, PasswordSecurity.MIN_ITERATIONS };
+        for (String password : passwords) {
+            byte[] salt = password.getBytes(StandardCharsets.UTF_8);
+            for (int cost : costs) {
+                PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, cost, 256);
+                byte[] expected = factory.generateSecret(spec).getEncoded();
+                spec.clearPassword();
+                // Run twice on the same thread, since the per-thread state is reused between calls
+                assertArrayEquals(expected, PasswordHashAlgorithm.PBKDF2_SHA256.derive(
+                        password.toCharArray(), salt, cost), password + " at " + cost);
+                assertArrayEquals(expected, PasswordHashAlgorithm.PBKDF2_SHA256.derive(
+                        password.toCharArray(), salt, cost), password + " at " + cost);
+            }
+        }
+    }
+
+    private static byte[] hex(String text) {
+        byte[] bytes = new byte[text.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(text.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,67 @@
+package com.healthbuddy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.security.MessageDigest;
+import java.util.Base64;
+import org.junit.jupiter.api.Test;
+
+class PasswordSecurityTest {
+    private static final String PASSWORD = "Secret#Passw0rd";
+
+    @Test
+    void newHashRecordsAlgorithmAndCost() {
+        String salt = PasswordSecurity.generateSalt();
+        String stored = PasswordSecurity.hashPassword(PASSWORD, salt);
+
+        String[] parts = stored.split("\\$");
+        assertEquals(3, parts.length);
+        assertEquals(PasswordHashAlgorithm.PBKDF2_SHA256.getId(), parts[0]);
+        assertEquals(PasswordSecurity.getIterations(), Integer.parseInt(parts[1]));
+        assertEquals(32, Base64.getDecoder().decode(parts[2]).length);
+
+        assertTrue(PasswordSecurity.verifyPassword(PASSWORD, stored, salt));
+        assertFalse(PasswordSecurity.verifyPassword(PASSWORD + "x", stored, salt));
+        assertFalse(PasswordSecurity.needsRehash(stored));
+    }
+
+    @Test
+    void storedCostIsUsedForVerification() {
+        String salt = PasswordSecurity.generateSalt();
+        int cheaper = PasswordSecurity.MIN_ITERATIONS / 2;
+        String stored = PasswordSecurity.hashPassword(PASSWORD.toCharArray(), salt,
+                PasswordHashAlgorithm.PBKDF2_SHA256, cheaper);
+
+        assertTrue(PasswordSecurity.verifyPassword(PASSWORD, stored, salt));
+        assertTrue(PasswordSecurity.needsRehash(stored));
+    }
+
+    @Test
+    void legacySha256HashStillVerifies() throws Exception {
+        String salt = PasswordSecurity.generateSalt();
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        md.update(Base64.getDecoder().decode(salt));
+        String legacy = Base64.getEncoder().encodeToString(md.digest(PASSWORD.getBytes()));
+
+        assertTrue(PasswordSecurity.verifyPassword(PASSWORD, legacy, salt));
+        assertFalse(PasswordSecurity.verifyPassword("wrong-password", legacy, salt));
+        assertTrue(PasswordSecurity.needsRehash(legacy));
+    }
+
+    @Test
+    void dummyVerificationNeverSucceeds() {
+        assertFalse(PasswordSecurity.verifyDummyPassword(PASSWORD.toCharArray()));
+        assertFalse(PasswordSecurity.verifyDummyPassword(new char[0]));
+    }
+
+    @Test
+    void malformedStoredHashNeverVerifies() {
+        String salt = PasswordSecurity.generateSalt();
+        assertFalse(PasswordSecurity.verifyPassword(PASSWORD, null, salt));
+        assertFalse(PasswordSecurity.verifyPassword(PASSWORD, "pbkdf2-sha256$abc$AAAA", salt));
+        assertFalse(PasswordSecurity.verifyPassword(PASSWORD, "unknown$1000$AAAA", salt));
+        assertFalse(PasswordSecurity.verifyPassword(PASSWORD, "not base64!", salt));
+    }
+}